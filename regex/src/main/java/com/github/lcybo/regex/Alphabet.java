@@ -0,0 +1,76 @@
+package com.github.lcybo.regex;
+
+import com.github.lcybo.regex.jdk.utils.Interval;
+
+import java.util.BitSet;
+
+import static com.github.lcybo.regex.Label.XI;
+import static com.github.lcybo.regex.NFA.CHAR_ASCII_END;
+
+/*
+ * Partition of the ASCII range into classes, the contiguous runs of chars no label endpoint
+ * separates: no label tells the chars of a class apart, so both determinization and the runtime
+ * table only need one column per class. Equivalent chars in separate runs, e.g. the chars on
+ * both sides of a range, still get separate classes.
+ */
+public class Alphabet {
+
+	// class id of every ASCII char
+	final byte[] classes = new byte[CHAR_ASCII_END];
+
+	// lowest char of every class, also a valid representative of the class
+	final char[] firsts;
+
+	private Alphabet(BitSet boundaries) {
+		boundaries.set(0);
+		firsts = new char[boundaries.cardinality()];
+		int cls = -1;
+		for (char c = 0; c < CHAR_ASCII_END; c++) {
+			if (boundaries.get(c)) {
+				firsts[++cls] = c;
+			}
+			classes[c] = (byte) cls;
+		}
+	}
+
+	public static Alphabet of(Iterable<Label> labels) {
+		BitSet boundaries = new BitSet(CHAR_ASCII_END + 1);
+		for (Label label : labels) {
+			if (label == null || label == XI || label instanceof NFA.Begin || label instanceof NFA.End) {
+				continue;
+			}
+			Interval interval = label.interval();
+			boundaries.set((char) interval.getLowEndpoint());
+			boundaries.set((char) interval.getHighEndpoint());
+		}
+		boundaries.clear(CHAR_ASCII_END);
+		return new Alphabet(boundaries);
+	}
+
+	public int size() {
+		return firsts.length;
+	}
+
+	public int classOf(char c) {
+		return classes[c];
+	}
+
+	public Label label(int cls) {
+		char low = firsts[cls];
+		char high = cls + 1 < firsts.length ? firsts[cls + 1] : CHAR_ASCII_END;
+		if (low == high - 1) {
+			return Single.single(low);
+		}
+		return new Range(low, high);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		for (int i = 0; i < firsts.length; i++) {
+			sb.append(i == 0 ? "" : ", ").append(label(i));
+		}
+		return sb.append('}').toString();
+	}
+
+}
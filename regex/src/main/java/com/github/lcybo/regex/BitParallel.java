@@ -0,0 +1,177 @@
+package com.github.lcybo.regex;
+
+import java.util.Arrays;
+
+import static com.github.lcybo.regex.NFA.CHAR_ASCII_END;
+
+/*
+ * Glushkov position automaton with the active positions packed into bits. The positions are
+ * the char consuming states of the Program; a step is D' = follow(D) & masks[c], where the
+ * follow set is looked up one byte of D at a time (Navarro-Raffinot tables).
+ */
+public class BitParallel {
+
+	static final int MAX_POSITIONS = 256;
+
+	// positions, and 64 bit words per set
+	final int positions;
+	final int words;
+
+	// masks[c * words + w], positions consuming char c
+	private final long[] masks;
+
+	// follows[((chunk << 8) | byte) * words + w], union of the follow sets of the positions
+	// 8 * chunk + i for every bit i set in byte
+	private final long[] follows;
+
+	private final long[] first;
+	private final long[] last;
+
+	private final boolean empty;
+
+	BitParallel(Program program) {
+		final int n = program.size();
+		final int[] ids = new int[n];
+		int m = 0;
+		for (int s = 0; s < n; s++) {
+			ids[s] = consumes(program, s) ? m++ : -1;
+		}
+		if (m > MAX_POSITIONS) {
+			throw new IllegalStateException("Too many positions for bit-parallel matching: " + m);
+		}
+		positions = m;
+		words = Math.max(1, (m + 63) >>> 6);
+		first = new long[words];
+		last = new long[words];
+		masks = new long[CHAR_ASCII_END * words];
+		final long[][] follow = new long[m][words];
+		for (int s : program.startText) {
+			set(first, 0, ids[s]);
+		}
+		empty = program.eoi(program.startText);
+		for (int s = 0; s < n; s++) {
+			int p = ids[s];
+			if (p < 0) {
+				continue;
+			}
+			int[] closure = program.closures[program.next[s]];
+			for (int t : closure) {
+				set(follow[p], 0, ids[t]);
+			}
+			if (program.eoi(closure)) {
+				set(last, 0, p);
+			}
+			Label label = program.labels[s];
+			for (char c = 0; c < CHAR_ASCII_END; c++) {
+				if (label.match(c)) {
+					set(masks, c * words, p);
+				}
+			}
+		}
+		final int chunks = (m + 7) >>> 3;
+		follows = new long[chunks * 256 * words];
+		for (int chunk = 0; chunk < chunks; chunk++) {
+			for (int b = 1; b < 256; b++) {
+				int base = ((chunk << 8) | b) * words;
+				for (int i = 0; i < 8; i++) {
+					int p = (chunk << 3) + i;
+					if ((b & (1 << i)) != 0 && p < m) {
+						for (int w = 0; w < words; w++) {
+							follows[base + w] |= follow[p][w];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static boolean consumes(Program program, int s) {
+		Label label = program.labels[s];
+		return label != null && label != Label.XI && !(label instanceof NFA.Begin) && !(label instanceof NFA.End);
+	}
+
+	private static void set(long[] bits, int offset, int p) {
+		if (p >= 0) {
+			bits[offset + (p >>> 6)] |= 1L << p;
+		}
+	}
+
+	public boolean test(final CharSequence cs) {
+		return words == 1 ? test1(cs) : testN(cs);
+	}
+
+	private boolean test1(final CharSequence cs) {
+		final int len = cs.length();
+		if (len == 0) {
+			return empty;
+		}
+		final long[] masks = this.masks;
+		final long[] follows = this.follows;
+		char c = cs.charAt(0);
+		if (c >= CHAR_ASCII_END) {
+			return false;
+		}
+		long d = first[0] & masks[c];
+		for (int i = 1; i < len; i++) {
+			if (d == 0) {
+				return false;
+			}
+			c = cs.charAt(i);
+			if (c >= CHAR_ASCII_END) {
+				return false;
+			}
+			long f = 0;
+			for (int base = 0; d != 0; base += 256, d >>>= 8) {
+				f |= follows[base | ((int) d & 0xff)];
+			}
+			d = f & masks[c];
+		}
+		return (d & last[0]) != 0;
+	}
+
+	private boolean testN(final CharSequence cs) {
+		final int len = cs.length();
+		if (len == 0) {
+			return empty;
+		}
+		final int words = this.words;
+		long[] d = new long[words];
+		long[] f = new long[words];
+		char c = cs.charAt(0);
+		if (c >= CHAR_ASCII_END) {
+			return false;
+		}
+		boolean alive = and(first, 0, masks, c * words, d);
+		for (int i = 1; i < len; i++) {
+			if (!alive) {
+				return false;
+			}
+			c = cs.charAt(i);
+			if (c >= CHAR_ASCII_END) {
+				return false;
+			}
+			Arrays.fill(f, 0);
+			for (int w = 0; w < words; w++) {
+				long bits = d[w];
+				for (int chunk = w << 3; bits != 0; chunk++, bits >>>= 8) {
+					int base = ((chunk << 8) | ((int) bits & 0xff)) * words;
+					for (int v = 0; v < words; v++) {
+						f[v] |= follows[base + v];
+					}
+				}
+			}
+			alive = and(f, 0, masks, c * words, d);
+		}
+		return and(d, 0, last, 0, f);
+	}
+
+	// dst = a & b, returns whether any bit is left
+	private boolean and(long[] a, int ao, long[] b, int bo, long[] dst) {
+		long any = 0;
+		for (int w = 0; w < words; w++) {
+			any |= dst[w] = a[ao + w] & b[bo + w];
+		}
+		return any != 0;
+	}
+
+}
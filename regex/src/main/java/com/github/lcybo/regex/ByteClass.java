@@ -0,0 +1,40 @@
+package com.github.lcybo.regex;
+
+import static com.github.lcybo.regex.NFA.CHAR_ASCII_END;
+
+/*
+ * A set of ASCII bytes, as a bitmap and as nibble tables for shuffle based lookups:
+ * b is in the set iff (lows[b & 15] & highs[b >>> 4]) != 0, highs being 0 from 8 up so
+ * that bytes from 0x80 up never are. The tables are padded to the widest byte vector.
+ */
+final class ByteClass {
+
+	final long      lo;
+	final long      hi;
+	final boolean[] members = new boolean[CHAR_ASCII_END];
+	final byte[] lows  = new byte[64];
+	final byte[] highs = new byte[64];
+
+	ByteClass(long lo, long hi) {
+		this.lo = lo;
+		this.hi = hi;
+		for (int b = 0; b < CHAR_ASCII_END; b++) {
+			if (((b < 64 ? lo >>> b : hi >>> (b - 64)) & 1) != 0) {
+				members[b] = true;
+				lows[b & 15] |= 1 << (b >>> 4);
+			}
+		}
+		for (int h = 0; h < 8; h++) {
+			highs[h] = (byte) (1 << h);
+		}
+	}
+
+	boolean contains(byte b) {
+		return b >= 0 && members[b];
+	}
+
+	int size() {
+		return Long.bitCount(lo) + Long.bitCount(hi);
+	}
+
+}
@@ -0,0 +1,109 @@
+package com.github.lcybo.regex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Bytes seen as chars without decoding: byte b is char b & 0xff, so bytes from 0x80 up fall
+ * outside ASCII and never match. Buffers are read with absolute gets, their position is kept.
+ */
+final class Bytes implements CharSequence {
+
+	private final byte[]     array;
+	private final ByteBuffer buffer;
+	private final int        offset;
+	private final int        length;
+
+	private Bytes(byte[] array, ByteBuffer buffer, int offset, int length) {
+		this.array = array;
+		this.buffer = buffer;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	static Bytes of(byte[] bytes, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > bytes.length) {
+			throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", size: " + bytes.length);
+		}
+		return new Bytes(bytes, null, offset, length);
+	}
+
+	// the remaining bytes of the buffer
+	static Bytes of(ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			return new Bytes(buffer.array(), null, buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		}
+		return new Bytes(null, buffer, buffer.position(), buffer.remaining());
+	}
+
+	@Override
+	public int length() {
+		return length;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if (array != null) {
+			return (char) (array[offset + index] & 0xff);
+		}
+		return (char) (buffer.get(offset + index) & 0xff);
+	}
+
+	// index of the next b at or after from, length if none
+	int indexOf(byte b, int from) {
+		if (array != null) {
+			final byte[] array = this.array;
+			for (int i = offset + from, end = offset + length; i < end; i++) {
+				if (array[i] == b) {
+					return i - offset;
+				}
+			}
+			return length;
+		}
+		for (int i = offset + from, end = offset + length; i < end; i++) {
+			if (buffer.get(i) == b) {
+				return i - offset;
+			}
+		}
+		return length;
+	}
+
+	// index of the next occurrence of the literal at or after from, -1 if none
+	int indexOf(byte[] literal, int from) {
+		if (array != null) {
+			int at = Scan.indexOf(array, offset + from, offset + length, literal);
+			return at < 0 ? -1 : at - offset;
+		}
+		for (int i = from, last = length - literal.length; i <= last; i++) {
+			int j = 0;
+			while (j < literal.length && buffer.get(offset + i + j) == literal[j]) {
+				j++;
+			}
+			if (j == literal.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if (start < 0 || end > length || start > end) {
+			throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + length);
+		}
+		return new Bytes(array, buffer, offset + start, end - start);
+	}
+
+	@Override
+	public String toString() {
+		if (array != null) {
+			return new String(array, offset, length, StandardCharsets.ISO_8859_1);
+		}
+		byte[] copy = new byte[length];
+		for (int i = 0; i < length; i++) {
+			copy[i] = buffer.get(offset + i);
+		}
+		return new String(copy, StandardCharsets.ISO_8859_1);
+	}
+
+}
@@ -0,0 +1,11 @@
+package com.github.lcybo.regex;
+
+// a DFA turned into bytecode, see DfaGenerator; public for the generated classes to implement it
+public interface CompiledDfa {
+
+	boolean matches(CharSequence cs);
+
+	// bytes from 0x80 up never match
+	boolean matches(byte[] bytes, int offset, int length);
+
+}
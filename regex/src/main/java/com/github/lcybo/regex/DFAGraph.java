@@ -1,6 +1,15 @@
 package com.github.lcybo.regex;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.github.lcybo.regex.NFA.CHAR_ASCII_END;
 
 public class DFAGraph {
 
@@ -10,10 +19,150 @@ public class DFAGraph {
 
 	final DFANode start;
 
+	final Alphabet alphabet;
+
 	public DFAGraph(Set<DFANode> nodes, Set<DFAEdge> edges, DFANode start) {
+		this(nodes, edges, start, Alphabet.of(edges.stream().map(e -> e.label).collect(Collectors.toList())));
+	}
+
+	public DFAGraph(Set<DFANode> nodes, Set<DFAEdge> edges, DFANode start, Alphabet alphabet) {
 		this.nodes = nodes;
 		this.edges = edges;
 		this.start = start;
+		this.alphabet = alphabet;
+	}
+
+	public Alphabet alphabet() {
+		return alphabet;
+	}
+
+	public Dfa compile() {
+		final int stride = Dfa.stride(alphabet.size());
+		// dead nodes (no nfa left) collapse into the shared dead state 0
+		final Map<DFANode, Integer> ids = new IdentityHashMap<>();
+		ids.put(start, stride);
+		nodes.forEach(node -> {
+			if (!node.nfas.isEmpty() && !ids.containsKey(node)) {
+				ids.put(node, (ids.size() + 1) * stride);
+			}
+		});
+		final int[] table = new int[(ids.size() + 1) * stride];
+		final long[] accepts = new long[((ids.size() + 1) >>> 6) + 1];
+		ids.forEach((node, s) -> {
+			if (node.terminal) {
+				int i = s / stride;
+				accepts[i >>> 6] |= 1L << i;
+			}
+		});
+		edges.forEach(edge -> {
+			Integer from = ids.get(edge.from);
+			Integer to = ids.get(edge.to);
+			if (from == null || to == null) {
+				return;
+			}
+			char low = (char) edge.label.interval().getLowEndpoint();
+			char high = (char) edge.label.interval().getHighEndpoint();
+			for (char c = low; c < high; c++) {
+				table[from + alphabet.classes[c]] = to;
+			}
+		});
+		return new Dfa(alphabet.classes, stride, table, ids.get(start), accepts);
+	}
+
+	// bytecode for the compiled table, minimize first to keep it small
+	public CompiledDfa generate() {
+		return DfaGenerator.generate(compile());
+	}
+
+	public DFAGraph minimize() {
+		// number live nodes, the implicit dead state takes the last id
+		final List<DFANode> states = new ArrayList<>();
+		final Map<DFANode, Integer> ids = new IdentityHashMap<>();
+		ids.put(start, 0);
+		states.add(start);
+		nodes.forEach(node -> {
+			if (!node.nfas.isEmpty() && !ids.containsKey(node)) {
+				ids.put(node, states.size());
+				states.add(node);
+			}
+		});
+		final int n = states.size() + 1;
+		final int dead = n - 1;
+		final int k = alphabet.size();
+		final int[][] delta = new int[n][k];
+		for (int[] row : delta) {
+			Arrays.fill(row, dead);
+		}
+		edges.forEach(edge -> {
+			Integer from = ids.get(edge.from);
+			Integer to = ids.get(edge.to);
+			if (from == null || to == null) {
+				return;
+			}
+			char low = (char) edge.label.interval().getLowEndpoint();
+			char high = (char) edge.label.interval().getHighEndpoint();
+			for (char c = low; c < high; c++) {
+				delta[from][alphabet.classes[c]] = to;
+			}
+		});
+		final int[] groups = new int[n];
+		for (int i = 0; i < states.size(); i++) {
+			groups[i] = states.get(i).terminal ? 1 : 0;
+		}
+		final int[] blocks = Hopcroft.partition(delta, groups);
+
+		// one node per block, represented by its first member; the dead block is dropped
+		final int deadBlock = blocks[dead];
+		final DFANode[] merged = new DFANode[dead + 1];
+		final int[] reps = new int[dead + 1];
+		Arrays.fill(reps, -1);
+		final Set<DFANode> mnodes = new LinkedHashSet<>();
+		for (int i = 0; i < states.size(); i++) {
+			int b = blocks[i];
+			if (b == deadBlock && i != 0 || merged[b] != null) {
+				continue;
+			}
+			DFANode node = new DFANode();
+			node.nfas.addAll(states.get(i).nfas);
+			node.terminal = states.get(i).terminal;
+			merged[b] = node;
+			reps[b] = i;
+			mnodes.add(node);
+		}
+		final DFANode mstart = merged[blocks[0]];
+		mstart.start = true;
+		final Set<DFAEdge> medges = new LinkedHashSet<>();
+		for (int b = 0; b < reps.length; b++) {
+			if (reps[b] < 0 || b == deadBlock) {
+				continue;
+			}
+			final int[] row = delta[reps[b]];
+			// adjacent classes leading to the same block share one label
+			for (int cls = 0; cls < k; ) {
+				int to = blocks[row[cls]];
+				int until = cls + 1;
+				while (until < k && blocks[row[until]] == to) {
+					until++;
+				}
+				if (to != deadBlock) {
+					DFAEdge edge = new DFAEdge(merged[b], merged[to], label(cls, until));
+					merged[b].addEdge(edge);
+					medges.add(edge);
+				}
+				cls = until;
+			}
+		}
+		return new DFAGraph(mnodes, medges, mstart, alphabet);
+	}
+
+	private Label label(int from, int until) {
+		char low = alphabet.firsts[from];
+		char high = until < alphabet.size() ? alphabet.firsts[until] : CHAR_ASCII_END;
+		return low == high - 1 ? Single.single(low) : new Range(low, high);
+	}
+
+	public int size() {
+		return nodes.size();
 	}
 
 	private static final String LF        = System.lineSeparator();
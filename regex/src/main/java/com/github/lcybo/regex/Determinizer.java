@@ -0,0 +1,209 @@
+package com.github.lcybo.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Subset construction straight from a Program into a Dfa table.
+ *
+ * Anchored: a state is the set of live NFA states, as Conversion does.
+ * Leftmost-longest: the DFA runs unanchored and a state keeps the threads grouped by start
+ * order, earliest first; a new group is appended behind at every position until a group
+ * reaches the terminal, groups behind a matched one are dropped, and a thread already owned
+ * by an earlier group is dropped from later ones. The last accepting position before the DFA
+ * dies is then the end of the leftmost-longest match.
+ */
+final class Determinizer {
+
+	static final int MAX_STATES = 10_000;
+
+	private static final int GROUP = -1;
+
+	private final Program program;
+	private final boolean unanchored;
+	private final int     width;
+
+	// every state as [inject, group, GROUP, group, GROUP, ...], with inject 1 while new groups are appended
+	private final List<int[]>         states = new ArrayList<>();
+	private final Map<Key, Integer>   ids    = new HashMap<>();
+
+	private final boolean[] seen;
+	private final int[]     buffer;
+
+	Determinizer(Program program, boolean unanchored) {
+		this.program = program;
+		this.unanchored = unanchored;
+		this.width = program.alphabet.size();
+		this.seen = new boolean[program.size()];
+		this.buffer = new int[program.size() * 2 + 2];
+	}
+
+	static Dfa anchored(Program program) {
+		return new Determinizer(program, false).build();
+	}
+
+	static Dfa leftmostLongest(Program program) {
+		return new Determinizer(program, true).build();
+	}
+
+	Dfa build() {
+		// dead state first
+		intern(new int[]{0});
+		int startText = initial(program.startText);
+		int start = initial(program.start);
+		final List<int[]> rows = new ArrayList<>();
+		for (int id = 0; id < states.size(); id++) {
+			int[] row = new int[width];
+			int[] state = states.get(id);
+			for (int cls = 0; cls < width; cls++) {
+				row[cls] = intern(step(state, cls));
+			}
+			rows.add(row);
+			if (states.size() > MAX_STATES) {
+				throw new TooLarge();
+			}
+		}
+		final int stride = Dfa.stride(width);
+		final int n = states.size();
+		final int[] table = new int[n * stride];
+		final long[] accepts = new long[(n >>> 6) + 1];
+		final long[] eois = new long[(n >>> 6) + 1];
+		for (int id = 0; id < n; id++) {
+			int[] row = rows.get(id);
+			for (int cls = 0; cls < width; cls++) {
+				table[id * stride + cls] = row[cls] * stride;
+			}
+			int[] state = states.get(id);
+			if (any(state, program.terminal)) {
+				accepts[id >>> 6] |= 1L << id;
+			}
+			if (any(state, program.eoi)) {
+				eois[id >>> 6] |= 1L << id;
+			}
+		}
+		return new Dfa(program.alphabet.classes, stride, table, start * stride, startText * stride, accepts, eois);
+	}
+
+	private int initial(int[] set) {
+		if (!unanchored) {
+			return intern(group(0, set));
+		}
+		return intern(group(program.terminal(set) ? 0 : 1, set));
+	}
+
+	private static int[] group(int inject, int[] set) {
+		int[] state = new int[set.length + 2];
+		state[0] = inject;
+		System.arraycopy(set, 0, state, 1, set.length);
+		state[set.length + 1] = GROUP;
+		return state;
+	}
+
+	private int[] step(int[] state, int cls) {
+		Arrays.fill(seen, false);
+		int len = 1;
+		boolean inject = unanchored && state[0] == 1;
+		for (int i = 1; i < state.length; ) {
+			int mark = len;
+			boolean matched = false;
+			for (; state[i] != GROUP; i++) {
+				int s = state[i];
+				if (program.matches(s, cls)) {
+					for (int t : program.closures[program.next[s]]) {
+						if (!seen[t]) {
+							seen[t] = true;
+							buffer[len++] = t;
+							matched |= program.terminal[t];
+						}
+					}
+				}
+			}
+			i++;
+			if (len > mark) {
+				Arrays.sort(buffer, mark, len);
+				buffer[len++] = GROUP;
+			}
+			if (matched) {
+				inject = false;
+				break;
+			}
+		}
+		if (inject) {
+			int mark = len;
+			for (int t : program.start) {
+				if (!seen[t]) {
+					seen[t] = true;
+					buffer[len++] = t;
+				}
+			}
+			if (len > mark) {
+				for (int i = mark; i < len; i++) {
+					inject &= !program.terminal[buffer[i]];
+				}
+				buffer[len++] = GROUP;
+			}
+		}
+		if (len == 1 && !inject) {
+			return new int[]{0};
+		}
+		buffer[0] = inject ? 1 : 0;
+		return Arrays.copyOf(buffer, len);
+	}
+
+	private int intern(int[] state) {
+		Key key = new Key(state);
+		Integer id = ids.get(key);
+		if (id == null) {
+			id = states.size();
+			states.add(state);
+			ids.put(key, id);
+		}
+		return id;
+	}
+
+	private static boolean any(int[] state, boolean[] flags) {
+		for (int i = 1; i < state.length; i++) {
+			if (state[i] != GROUP && flags[state[i]]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static final class Key {
+
+		final int[] state;
+		final int   hash;
+
+		Key(int[] state) {
+			this.state = state;
+			this.hash = Arrays.hashCode(state);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Key && Arrays.equals(state, ((Key) o).state);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+	}
+
+	// the subset construction blew up, the pattern is valid but needs an NFA based matcher
+	static final class TooLarge extends IllegalStateException {
+
+		private static final long serialVersionUID = 1L;
+
+		TooLarge() {
+			super("DFA exceeds " + MAX_STATES + " states");
+		}
+
+	}
+
+}
@@ -0,0 +1,330 @@
+package com.github.lcybo.regex;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static com.github.lcybo.regex.NFA.CHAR_ASCII_END;
+
+public class Dfa {
+
+	// state 0 is the dead state, all of its transitions loop back to itself
+	static final int DEAD = 0;
+
+	// smallest self loop worth skipping with Scan
+	static final int MIN_LOOP = 8;
+
+	// smallest chunk worth a task, and how many chars the runs take between merges
+	static final int MIN_CHUNK = 1 << 16;
+	static final int CONVERGE  = 64;
+
+	// char -> equivalence class, see Alphabet
+	final byte[] classes;
+
+	// row width, the class count rounded up to a power of 2 so that s >>> shift is the state number
+	final int stride;
+	final int shift;
+
+	// premultiplied, table[s + classes[c]] is the premultiplied successor of s on c
+	final int[] table;
+
+	// start state anywhere but at the beginning of input, and at the beginning ('^' holds)
+	final int start;
+	final int startText;
+
+	// indexed by state number, i.e. s >>> shift; accepts before the next char, eois at end of input ('$' holds)
+	final long[] accepts;
+	final long[] eois;
+
+	// indexed by state number, the bytes a state loops on, null if too few
+	final ByteClass[] loops;
+
+	Dfa(byte[] classes, int stride, int[] table, int start, long[] accepts) {
+		this(classes, stride, table, start, start, accepts, accepts);
+	}
+
+	Dfa(byte[] classes, int stride, int[] table, int start, int startText, long[] accepts, long[] eois) {
+		this.classes = classes;
+		this.stride = stride;
+		this.shift = Integer.numberOfTrailingZeros(stride);
+		this.table = table;
+		this.start = start;
+		this.startText = startText;
+		this.accepts = accepts;
+		this.eois = eois;
+		this.loops = loops();
+	}
+
+	private ByteClass[] loops() {
+		final ByteClass[] loops = new ByteClass[states()];
+		for (int q = 1; q < loops.length; q++) {
+			int s = q << shift;
+			long lo = 0;
+			long hi = 0;
+			for (int c = 0; c < CHAR_ASCII_END; c++) {
+				if (table[s + classes[c]] == s) {
+					if (c < 64) {
+						lo |= 1L << c;
+					} else {
+						hi |= 1L << (c - 64);
+					}
+				}
+			}
+			if (Long.bitCount(lo) + Long.bitCount(hi) >= MIN_LOOP) {
+				loops[q] = new ByteClass(lo, hi);
+			}
+		}
+		return loops;
+	}
+
+	static int stride(int classes) {
+		return classes <= 1 ? 1 : Integer.highestOneBit(classes - 1) << 1;
+	}
+
+	public boolean matches(final CharSequence cs) {
+		final byte[] classes = this.classes;
+		final int[] table = this.table;
+		int s = startText;
+		for (int i = 0, len = cs.length(); i < len; i++) {
+			char c = cs.charAt(i);
+			if (c >= CHAR_ASCII_END) {
+				return false;
+			}
+			s = table[s + classes[c]];
+			if (s == DEAD) {
+				return false;
+			}
+		}
+		return eoi(s);
+	}
+
+	// bytes from 0x80 up never match
+	public boolean matches(final byte[] bytes, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > bytes.length) {
+			throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", size: " + bytes.length);
+		}
+		final byte[] classes = this.classes;
+		final int[] table = this.table;
+		final ByteClass[] loops = this.loops;
+		int s = startText;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			ByteClass loop = loops[s >>> shift];
+			if (loop != null && (i = Scan.skip(bytes, i, end, loop)) == end) {
+				break;
+			}
+			byte b = bytes[i];
+			if (b < 0) {
+				return false;
+			}
+			s = table[s + classes[b]];
+			if (s == DEAD) {
+				return false;
+			}
+		}
+		return eoi(s);
+	}
+
+	// the remaining bytes of the buffer, its position is left alone
+	public boolean matches(final ByteBuffer buffer) {
+		if (buffer.hasArray()) {
+			return matches(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		}
+		final byte[] classes = this.classes;
+		final int[] table = this.table;
+		int s = startText;
+		for (int i = buffer.position(), end = buffer.limit(); i < end; i++) {
+			byte b = buffer.get(i);
+			if (b < 0) {
+				return false;
+			}
+			s = table[s + classes[b]];
+			if (s == DEAD) {
+				return false;
+			}
+		}
+		return eoi(s);
+	}
+
+	/*
+	 * Splits the input into chunks run on the pool. All chunks but the first start from every
+	 * state at once and give a state mapping; the runs converge quickly, so only the distinct
+	 * states are stepped. Composing the mappings from the start state gives the exact result.
+	 */
+	public boolean matches(final CharSequence cs, ForkJoinPool pool) {
+		final int len = cs.length();
+		if (pool.getParallelism() < 2) {
+			// a mapping costs at least two runs, only worth it with another core
+			return matches(cs);
+		}
+		return matches(cs, pool, Math.max(MIN_CHUNK, len / (pool.getParallelism() * 4) + 1));
+	}
+
+	boolean matches(final CharSequence cs, ForkJoinPool pool, int chunk) {
+		final int len = cs.length();
+		if (len <= chunk) {
+			return matches(cs);
+		}
+		final int chunks = (len + chunk - 1) / chunk;
+		final List<ForkJoinTask<int[]>> maps = new ArrayList<>(chunks);
+		for (int i = 1; i < chunks; i++) {
+			final int from = i * chunk;
+			final int to = Math.min(len, from + chunk);
+			maps.add(pool.submit(() -> mapping(cs, from, to)));
+		}
+		int s = run(cs, startText, 0, chunk);
+		for (ForkJoinTask<int[]> map : maps) {
+			if (s == DEAD) {
+				map.cancel(false);
+				continue;
+			}
+			s = map.join()[s >>> shift];
+		}
+		return s != DEAD && eoi(s);
+	}
+
+	private int run(final CharSequence cs, int s, int from, int to) {
+		final byte[] classes = this.classes;
+		final int[] table = this.table;
+		for (int i = from; i < to; i++) {
+			char c = cs.charAt(i);
+			if (c >= CHAR_ASCII_END) {
+				return DEAD;
+			}
+			s = table[s + classes[c]];
+			if (s == DEAD) {
+				return DEAD;
+			}
+		}
+		return s;
+	}
+
+	// state reached from every state over cs[from, to), indexed by state number
+	int[] mapping(final CharSequence cs, int from, int to) {
+		final byte[] classes = this.classes;
+		final int[] table = this.table;
+		final int n = states();
+		// the distinct states still running, and which of them each start state follows
+		int[] runs = new int[n];
+		int count = n;
+		final int[] of = new int[n];
+		for (int q = 0; q < n; q++) {
+			runs[q] = q << shift;
+			of[q] = q;
+		}
+		final int[] slot = new int[n];
+		final int[] merged = new int[n];
+		int i = from;
+		while (i < to && count > 1) {
+			final int stop = Math.min(to, i + CONVERGE);
+			for (; i < stop; i++) {
+				char c = cs.charAt(i);
+				if (c >= CHAR_ASCII_END) {
+					Arrays.fill(runs, 0, count, DEAD);
+					i = to;
+					break;
+				}
+				final int cls = classes[c];
+				for (int j = 0; j < count; j++) {
+					runs[j] = table[runs[j] + cls];
+				}
+			}
+			// merge runs that reached the same state
+			Arrays.fill(slot, -1);
+			int distinct = 0;
+			for (int j = 0; j < count; j++) {
+				int q = runs[j] >>> shift;
+				if (slot[q] < 0) {
+					slot[q] = distinct;
+					runs[distinct++] = runs[j];
+				}
+				merged[j] = slot[q];
+			}
+			for (int q = 0; q < n; q++) {
+				of[q] = merged[of[q]];
+			}
+			count = distinct;
+		}
+		if (count == 1 && i < to) {
+			// converged, the rest of the chunk only moves the single run
+			runs[0] = run(cs, runs[0], i, to);
+		}
+		final int[] map = new int[n];
+		for (int q = 0; q < n; q++) {
+			map[q] = runs[of[q]];
+		}
+		return map;
+	}
+
+	/*
+	 * The binary form MappedDfa loads, big endian: the header (magic, version, flags, stride,
+	 * state count, start, startText), the 128 char classes, the premultiplied table, then the
+	 * accepts and eois bitmaps. The stream is not closed.
+	 */
+	public void write(OutputStream out) throws IOException {
+		final DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MappedDfa.MAGIC);
+		data.writeShort(MappedDfa.VERSION);
+		data.writeShort(0);
+		data.writeInt(stride);
+		data.writeInt(states());
+		data.writeInt(start);
+		data.writeInt(startText);
+		data.write(classes, 0, CHAR_ASCII_END);
+		for (int t : table) {
+			data.writeInt(t);
+		}
+		// the bitmaps may be longer than the states need
+		for (int w = 0, words = (states() + 63) >>> 6; w < words; w++) {
+			data.writeLong(accepts[w]);
+		}
+		for (int w = 0, words = (states() + 63) >>> 6; w < words; w++) {
+			data.writeLong(eois[w]);
+		}
+		data.flush();
+	}
+
+	// the live transitions of s as runs of chars: lo, hi, premultiplied target, ascending
+	int[] ranges(int s) {
+		final int[] ranges = new int[CHAR_ASCII_END * 3];
+		int n = 0;
+		for (int lo = 0; lo < CHAR_ASCII_END; ) {
+			int target = table[s + classes[lo]];
+			int hi = lo;
+			while (hi + 1 < CHAR_ASCII_END && table[s + classes[hi + 1]] == target) {
+				hi++;
+			}
+			if (target != DEAD) {
+				ranges[n++] = lo;
+				ranges[n++] = hi;
+				ranges[n++] = target;
+			}
+			lo = hi + 1;
+		}
+		return Arrays.copyOf(ranges, n);
+	}
+
+	boolean accepting(int s) {
+		int i = s >>> shift;
+		return (accepts[i >>> 6] & (1L << i)) != 0;
+	}
+
+	boolean eoi(int s) {
+		int i = s >>> shift;
+		return (eois[i >>> 6] & (1L << i)) != 0;
+	}
+
+	public int states() {
+		return table.length >>> shift;
+	}
+
+	public int classes() {
+		return classes[CHAR_ASCII_END - 1] + 1;
+	}
+
+}
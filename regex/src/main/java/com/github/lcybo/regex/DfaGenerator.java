@@ -0,0 +1,347 @@
+package com.github.lcybo.regex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Generates a class implementing CompiledDfa for a Dfa, the transitions turned into range checks
+ * and jumps between the code of the states: no table loads, no class lookups and no state
+ * variable. Class files are version 49 so that no stack map frames are
+ * needed, and every class gets its own loader so that it can be unloaded with its matcher.
+ */
+final class DfaGenerator {
+
+	// branch offsets are 16 bits
+	static final int MAX_CODE = Short.MAX_VALUE;
+
+	private static final AtomicInteger COUNT = new AtomicInteger();
+
+	private static final String CHAR_SEQUENCE = "java/lang/CharSequence";
+
+	private final Dfa  dfa;
+	private final Pool pool = new Pool();
+
+	private DfaGenerator(Dfa dfa) {
+		this.dfa = dfa;
+	}
+
+	static CompiledDfa generate(Dfa dfa) {
+		final String name = "com/github/lcybo/regex/GeneratedDfa" + COUNT.incrementAndGet();
+		final byte[] bytes = new DfaGenerator(dfa).write(name);
+		try {
+			Class<?> type = new Loader().define(name.replace('/', '.'), bytes);
+			return (CompiledDfa) type.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Generated DFA failed to load", e);
+		}
+	}
+
+	private byte[] write(String name) {
+		final int self = pool.type(name);
+		final int object = pool.type("java/lang/Object");
+		final int compiled = pool.type(CompiledDfa.class.getName().replace('.', '/'));
+		final List<byte[]> methods = new ArrayList<>();
+		methods.add(method(0x0001, "<init>", "()V", init(), 1, 1));
+		methods.add(method(0x0001, "matches", "(L" + CHAR_SEQUENCE + ";)Z", chars(), 3, 5));
+		methods.add(method(0x0001, "matches", "([BII)Z", bytes(), 3, 5));
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0xCAFEBABE);
+			out.writeShort(0);
+			out.writeShort(49);
+			pool.write(out);
+			out.writeShort(0x0001 | 0x0010 | 0x0020);
+			out.writeShort(self);
+			out.writeShort(object);
+			out.writeShort(1);
+			out.writeShort(compiled);
+			out.writeShort(0);
+			out.writeShort(methods.size());
+			for (byte[] method : methods) {
+				out.write(method);
+			}
+			out.writeShort(0);
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private byte[] method(int access, String name, String descriptor, Code code, int stack, int locals) {
+		final byte[] body = code.resolve();
+		if (body.length > MAX_CODE) {
+			throw new IllegalStateException("DFA too large for bytecode: " + body.length + " bytes");
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeShort(access);
+			out.writeShort(pool.utf8(name));
+			out.writeShort(pool.utf8(descriptor));
+			out.writeShort(1);
+			out.writeShort(pool.utf8("Code"));
+			out.writeInt(12 + body.length);
+			out.writeShort(stack);
+			out.writeShort(locals);
+			out.writeInt(body.length);
+			out.write(body);
+			out.writeShort(0);
+			out.writeShort(0);
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private Code init() {
+		Code code = new Code();
+		code.op(ALOAD_0);
+		code.op(INVOKESPECIAL).u2(pool.method("java/lang/Object", "<init>", "()V", false));
+		code.op(RETURN);
+		return code;
+	}
+
+	// locals: 1 cs, 2 i, 3 length, 4 c
+	private Code chars() {
+		final Code code = new Code();
+		code.op(ICONST_0).op(ISTORE).u1(2);
+		code.op(ALOAD_1).op(INVOKEINTERFACE).u2(pool.method(CHAR_SEQUENCE, "length", "()I", true)).u1(1).u1(0);
+		code.op(ISTORE).u1(3);
+		states(code, 2, 3, 4, () -> {
+			code.op(ALOAD_1).op(ILOAD).u1(2).op(INVOKEINTERFACE).u2(pool.method(CHAR_SEQUENCE, "charAt", "(I)C", true)).u1(2).u1(0);
+			code.op(ISTORE).u1(4);
+		});
+		return code;
+	}
+
+	// locals: 1 bytes, 2 i, 3 end, 4 b; i starts as the offset
+	private Code bytes() {
+		final Code code = new Code();
+		// the range check of Dfa.matches, an IndexOutOfBoundsException on a bad range
+		code.op(ILOAD).u1(2).op(ILOAD).u1(3).op(ALOAD_1).op(ARRAYLENGTH);
+		code.op(INVOKESTATIC).u2(pool.method("java/util/Objects", "checkFromIndexSize", "(III)I", false)).op(POP);
+		code.op(ILOAD).u1(2).op(ILOAD).u1(3).op(IADD).op(ISTORE).u1(3);
+		states(code, 2, 3, 4, () -> {
+			// b & 0xff as in Dfa, bytes from 0x80 up fall outside every range
+			code.op(ALOAD_1).op(ILOAD).u1(2).op(BALOAD).push(0xff).op(IAND).op(ISTORE).u1(4);
+		});
+		return code;
+	}
+
+	/*
+	 * The state is the position in the code: every state reads the next char, or returns at the
+	 * end of input, and its range checks jump straight to the code of the next state.
+	 */
+	private void states(Code code, int i, int end, int c, Runnable read) {
+		final int n = dfa.states();
+		final Label[] labels = new Label[n];
+		final Label dead = new Label();
+		final Label accept = new Label();
+		for (int q = 0; q < n; q++) {
+			labels[q] = q == 0 ? dead : new Label();
+		}
+		code.jump(GOTO, labels[dfa.startText >>> dfa.shift]);
+		for (int q = 1; q < n; q++) {
+			code.mark(labels[q]);
+			final int s = q << dfa.shift;
+			code.op(ILOAD).u1(i).op(ILOAD).u1(end).jump(IF_ICMPGE, dfa.eoi(s) ? accept : dead);
+			read.run();
+			code.op(IINC).u1(i).u1(1);
+			final int[] ranges = dfa.ranges(s);
+			for (int r = 0; r < ranges.length; r += 3) {
+				int lo = ranges[r];
+				int hi = ranges[r + 1];
+				Label next = new Label();
+				if (lo == hi) {
+					code.op(ILOAD).u1(c).push(lo).jump(IF_ICMPNE, next);
+				} else {
+					if (lo > 0) {
+						code.op(ILOAD).u1(c).push(lo).jump(IF_ICMPLT, next);
+					}
+					code.op(ILOAD).u1(c).push(hi).jump(IF_ICMPGT, next);
+				}
+				code.jump(GOTO, labels[ranges[r + 2] >>> dfa.shift]);
+				code.mark(next);
+			}
+			code.jump(GOTO, dead);
+		}
+		code.mark(dead);
+		code.op(ICONST_0).op(IRETURN);
+		code.mark(accept);
+		code.op(ICONST_1).op(IRETURN);
+	}
+
+	private static final int ICONST_0        = 0x03;
+	private static final int ICONST_1        = 0x04;
+	private static final int BIPUSH          = 0x10;
+	private static final int SIPUSH          = 0x11;
+	private static final int ILOAD           = 0x15;
+	private static final int ALOAD_0         = 0x2a;
+	private static final int ALOAD_1         = 0x2b;
+	private static final int BALOAD          = 0x33;
+	private static final int ISTORE          = 0x36;
+	private static final int POP             = 0x57;
+	private static final int IADD            = 0x60;
+	private static final int IAND            = 0x7e;
+	private static final int IINC            = 0x84;
+	private static final int IF_ICMPNE       = 0xa0;
+	private static final int IF_ICMPLT       = 0xa1;
+	private static final int IF_ICMPGE       = 0xa2;
+	private static final int IF_ICMPGT       = 0xa3;
+	private static final int GOTO            = 0xa7;
+	private static final int IRETURN         = 0xac;
+	private static final int RETURN          = 0xb1;
+	private static final int INVOKESPECIAL   = 0xb7;
+	private static final int INVOKESTATIC    = 0xb8;
+	private static final int INVOKEINTERFACE = 0xb9;
+	private static final int ARRAYLENGTH     = 0xbe;
+
+	private static final class Label {
+
+		int position = -1;
+
+	}
+
+	// bytecode with forward references, patched once every label is placed
+	private static final class Code {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		// position of the offset to patch, position of the instruction, label
+		private final List<Object[]> fixups = new ArrayList<>();
+
+		Code op(int op) {
+			bytes.write(op);
+			return this;
+		}
+
+		Code u1(int v) {
+			bytes.write(v);
+			return this;
+		}
+
+		Code u2(int v) {
+			bytes.write(v >>> 8);
+			bytes.write(v);
+			return this;
+		}
+
+		Code push(int v) {
+			if (v >= -128 && v <= 127) {
+				return op(BIPUSH).u1(v);
+			}
+			if (v >= Short.MIN_VALUE && v <= Short.MAX_VALUE) {
+				return op(SIPUSH).u2(v);
+			}
+			throw new IllegalStateException("Constant out of range: " + v);
+		}
+
+		void mark(Label label) {
+			label.position = bytes.size();
+		}
+
+		Code jump(int op, Label label) {
+			int at = bytes.size();
+			op(op);
+			fixups.add(new Object[]{bytes.size(), at, label});
+			return u2(0);
+		}
+
+		byte[] resolve() {
+			byte[] code = bytes.toByteArray();
+			for (Object[] fixup : fixups) {
+				int pos = (Integer) fixup[0];
+				int offset = ((Label) fixup[2]).position - (Integer) fixup[1];
+				code[pos] = (byte) (offset >>> 8);
+				code[pos + 1] = (byte) offset;
+			}
+			return code;
+		}
+
+	}
+
+	private static final class Pool {
+
+		private final ByteArrayOutputStream bytes   = new ByteArrayOutputStream();
+		private final DataOutputStream      out     = new DataOutputStream(bytes);
+		private final Map<String, Integer>  entries = new HashMap<>();
+		private       int                   count   = 1;
+
+		int utf8(String s) {
+			return entry("U" + s, () -> {
+				out.writeByte(1);
+				out.writeUTF(s);
+			});
+		}
+
+		int type(String name) {
+			int utf8 = utf8(name);
+			return entry("C" + name, () -> {
+				out.writeByte(7);
+				out.writeShort(utf8);
+			});
+		}
+
+		int method(String owner, String name, String descriptor, boolean itf) {
+			int type = type(owner);
+			int n = utf8(name);
+			int d = utf8(descriptor);
+			int nameAndType = entry("N" + name + descriptor, () -> {
+				out.writeByte(12);
+				out.writeShort(n);
+				out.writeShort(d);
+			});
+			return entry("M" + owner + "." + name + descriptor, () -> {
+				out.writeByte(itf ? 11 : 10);
+				out.writeShort(type);
+				out.writeShort(nameAndType);
+			});
+		}
+
+		private int entry(String key, Writer writer) {
+			Integer index = entries.get(key);
+			if (index == null) {
+				try {
+					writer.write();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+				index = count++;
+				entries.put(key, index);
+			}
+			return index;
+		}
+
+		void write(DataOutputStream to) throws IOException {
+			to.writeShort(count);
+			to.write(bytes.toByteArray());
+		}
+
+		private interface Writer {
+
+			void write() throws IOException;
+
+		}
+
+	}
+
+	private static final class Loader extends ClassLoader {
+
+		Loader() {
+			super(CompiledDfa.class.getClassLoader());
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+
+	}
+
+}
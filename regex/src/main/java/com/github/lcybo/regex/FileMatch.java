@@ -0,0 +1,44 @@
+package com.github.lcybo.regex;
+
+import java.util.Objects;
+
+// span [start, end) of a match in a file, in bytes
+public class FileMatch {
+
+	final long start;
+
+	final long end;
+
+	FileMatch(long start, long end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	public long start() {
+		return start;
+	}
+
+	public long end() {
+		return end;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		FileMatch match = (FileMatch) o;
+		return start == match.start &&
+				end == match.end;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(start, end);
+	}
+
+	@Override
+	public String toString() {
+		return "[" + start + ", " + end + ")";
+	}
+
+}
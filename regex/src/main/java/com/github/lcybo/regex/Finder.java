@@ -0,0 +1,312 @@
+package com.github.lcybo.regex;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static com.github.lcybo.regex.Dfa.DEAD;
+import static com.github.lcybo.regex.NFA.CHAR_ASCII_END;
+
+/*
+ * Leftmost-longest search at DFA speed: the forward DFA finds where the match ends, the DFA of
+ * the reversed graph then runs backward from there, its longest match being the leftmost start.
+ *
+ * A literal every match contains narrows the search: with a bounded offset, the starts in the
+ * window before each occurrence are verified by the anchored DFA; with an unbounded one the
+ * literal only gates the DFA pass.
+ *
+ * A pattern whose DFA would exceed Determinizer.MAX_STATES is searched by a Pike VM instead,
+ * one per thread; slower and allocating a Match per find, but any valid pattern compiles.
+ * File scans need the DFAs and are not available then.
+ */
+public class Finder implements Searcher {
+
+	final Dfa forward;
+	final Dfa reverse;
+
+	// a match starting at s contains a prefilter hit at s + minOffset .. s + maxOffset
+	final Dfa       anchored;
+	final Prefilter prefilter;
+	final int       minOffset;
+	final int       maxOffset;
+
+	// the Pike VM fallback, null while the DFAs above exist
+	final ThreadLocal<PikeVM> vm;
+
+	static final long NONE = -1;
+
+	// shorter literals are too common to gate the DFA pass
+	static final int MIN_GATE = 3;
+
+	// wider windows cost more verifications than a plain DFA pass, the literal only gates it
+	static final int MAX_WINDOW = 16;
+
+	Finder(Dfa forward, Dfa reverse) {
+		this(forward, reverse, null, null);
+	}
+
+	Finder(Dfa forward, Dfa reverse, Dfa anchored, Prefilter prefilter) {
+		this(forward, reverse, anchored, prefilter, 0, 0);
+	}
+
+	Finder(Dfa forward, Dfa reverse, Dfa anchored, Prefilter prefilter, int minOffset, int maxOffset) {
+		this.forward = forward;
+		this.reverse = reverse;
+		this.anchored = anchored;
+		this.prefilter = prefilter;
+		this.minOffset = Math.max(0, minOffset);
+		this.maxOffset = maxOffset;
+		this.vm = null;
+	}
+
+	private Finder(Program program) {
+		this.forward = null;
+		this.reverse = null;
+		this.anchored = null;
+		this.prefilter = null;
+		this.minOffset = 0;
+		this.maxOffset = 0;
+		this.vm = ThreadLocal.withInitial(() -> new PikeVM(program));
+	}
+
+	static Finder of(NFAGraph graph) {
+		return of(graph, new Program(graph));
+	}
+
+	// program is the graph's, for callers building more from it
+	static Finder of(NFAGraph graph, Program program) {
+		try {
+			return build(graph, program);
+		} catch (Determinizer.TooLarge e) {
+			return new Finder(program);
+		}
+	}
+
+	private static Finder build(NFAGraph graph, Program program) {
+		Dfa forward = Determinizer.leftmostLongest(program);
+		Dfa reverse = Determinizer.anchored(new Program(graph.reverse()));
+		List<String> prefixes = Literals.prefixes(program);
+		Literals.Factor factor = rarest(Literals.factors(program));
+		boolean windowed = factor != null && factor.bounded() && factor.max - factor.min < MAX_WINDOW;
+		if (!prefixes.isEmpty() && (!windowed || cost(prefixes) <= cost(factor))) {
+			return new Finder(forward, reverse, Determinizer.anchored(program), Prefilter.of(prefixes));
+		}
+		if (factor == null || !windowed && factor.literal.length() < MIN_GATE) {
+			return new Finder(forward, reverse);
+		}
+		if (!windowed) {
+			return new Finder(forward, reverse, null, new Prefilter.Horspool(factor.literal), factor.min, Literals.UNBOUNDED);
+		}
+		return new Finder(forward, reverse, Determinizer.anchored(program), new Prefilter.Horspool(factor.literal),
+				factor.min, factor.max);
+	}
+
+	// bounded factors first, then the fewest expected verifications
+	private static Literals.Factor rarest(List<Literals.Factor> factors) {
+		Literals.Factor best = null;
+		for (Literals.Factor f : factors) {
+			if (best == null || f.bounded() && !best.bounded()
+					|| f.bounded() == best.bounded() && cost(f) < cost(best)) {
+				best = f;
+			}
+		}
+		return best;
+	}
+
+	private static double cost(List<String> prefixes) {
+		double cost = 0;
+		for (String prefix : prefixes) {
+			cost += Literals.frequency(prefix);
+		}
+		return cost;
+	}
+
+	private static double cost(Literals.Factor factor) {
+		int window = factor.bounded() ? factor.max - factor.min + 1 : 1;
+		return Literals.frequency(factor.literal) * window;
+	}
+
+	@Override
+	public Match find(final CharSequence cs, int from) {
+		final long found = search(cs, from);
+		return found == NONE ? null : new Match(startOf(found), endOf(found));
+	}
+
+	// search without allocation: the match packed as start << 32 | end, NONE if none
+	long search(final CharSequence cs, int from) {
+		final int len = cs.length();
+		if (from < 0 || from > len) {
+			throw new IndexOutOfBoundsException("from: " + from + ", length: " + len);
+		}
+		if (vm != null) {
+			Match match = vm.get().find(cs, from);
+			return match == null ? NONE : pack(match.start, match.end);
+		}
+		if (prefilter != null && anchored != null) {
+			return window(cs, from, len);
+		}
+		if (prefilter != null) {
+			int first = first(from, len);
+			if (first < 0 || prefilter.next(cs, first) < 0) {
+				return NONE;
+			}
+		}
+		int end = end(cs, from, len);
+		if (end < 0) {
+			return NONE;
+		}
+		return pack(start(cs, from, end), end);
+	}
+
+	private long window(final CharSequence cs, int from, int len) {
+		// starts below checked have been verified already
+		int checked = from;
+		final int first = first(from, len);
+		if (first < 0) {
+			return NONE;
+		}
+		for (int at = prefilter.next(cs, first); at >= 0; at = prefilter.next(cs, at + 1)) {
+			for (int s = Math.max(checked, at - maxOffset), last = at - minOffset; s <= last; s++) {
+				int end = longest(cs, s, len);
+				if (end >= 0) {
+					return pack(s, end);
+				}
+			}
+			checked = Math.max(checked, at - minOffset + 1);
+		}
+		return NONE;
+	}
+
+	// where the prefilter starts looking for a match starting at from or later, -1 past the end
+	private int first(int from, int len) {
+		long first = (long) from + minOffset;
+		return first > len ? -1 : (int) Math.max(from, first);
+	}
+
+	static long pack(int start, int end) {
+		return (long) start << 32 | end;
+	}
+
+	static int startOf(long match) {
+		return (int) (match >>> 32);
+	}
+
+	static int endOf(long match) {
+		return (int) match;
+	}
+
+	// matches in the file, the scan owns the channel and must be closed
+	public MappedScan scan(Path path) throws IOException {
+		requireDfas();
+		return new MappedScan(this, FileChannel.open(path, StandardOpenOption.READ), true, MappedScan.DEFAULT_WINDOW);
+	}
+
+	// matches from the start of the channel, which is left open
+	public MappedScan scan(FileChannel channel) {
+		return scan(channel, MappedScan.DEFAULT_WINDOW);
+	}
+
+	MappedScan scan(FileChannel channel, int window) {
+		requireDfas();
+		return new MappedScan(this, channel, false, window);
+	}
+
+	private void requireDfas() {
+		if (vm != null) {
+			throw new UnsupportedOperationException("File scans need a DFA, the pattern exceeds "
+					+ Determinizer.MAX_STATES + " states");
+		}
+	}
+
+	public String stats() {
+		if (vm != null) {
+			return "pike vm, DFA exceeds " + Determinizer.MAX_STATES + " states";
+		}
+		StringBuilder sb = new StringBuilder()
+				.append("forward ").append(forward.states()).append(" states, reverse ")
+				.append(reverse.states()).append(" states, ");
+		if (prefilter == null) {
+			return sb.append("no prefilter").toString();
+		}
+		sb.append(prefilter);
+		if (anchored == null) {
+			return sb.append(" gate").toString();
+		}
+		return sb.append(" at [").append(minOffset).append(", ").append(maxOffset).append("]").toString();
+	}
+
+	// end of the longest match starting exactly at from, -1 if none
+	int longest(final CharSequence cs, int from, int len) {
+		final Dfa dfa = anchored;
+		final byte[] classes = dfa.classes;
+		final int[] table = dfa.table;
+		int s = from == 0 ? dfa.startText : dfa.start;
+		int end = -1;
+		for (int i = from; i < len; i++) {
+			if (dfa.accepting(s)) {
+				end = i;
+			}
+			char c = cs.charAt(i);
+			if (c >= CHAR_ASCII_END) {
+				return end;
+			}
+			s = table[s + classes[c]];
+			if (s == DEAD) {
+				return end;
+			}
+		}
+		return dfa.eoi(s) ? len : end;
+	}
+
+	int end(final CharSequence cs, int from, int len) {
+		final Dfa dfa = forward;
+		final byte[] classes = dfa.classes;
+		final int[] table = dfa.table;
+		int s = from == 0 ? dfa.startText : dfa.start;
+		int end = -1;
+		for (int i = from; i < len; i++) {
+			if (dfa.accepting(s)) {
+				end = i;
+			}
+			char c = cs.charAt(i);
+			if (c >= CHAR_ASCII_END) {
+				// kills every thread, a new one starts behind it unless something matched already
+				if (end >= 0) {
+					return end;
+				}
+				s = dfa.start;
+				continue;
+			}
+			s = table[s + classes[c]];
+			if (s == DEAD) {
+				return end;
+			}
+		}
+		return dfa.eoi(s) ? len : end;
+	}
+
+	int start(final CharSequence cs, int from, int end) {
+		final Dfa dfa = reverse;
+		final byte[] classes = dfa.classes;
+		final int[] table = dfa.table;
+		int s = end == cs.length() ? dfa.startText : dfa.start;
+		int start = end;
+		for (int i = end - 1; i >= from; i--) {
+			if (dfa.accepting(s)) {
+				start = i + 1;
+			}
+			char c = cs.charAt(i);
+			if (c >= CHAR_ASCII_END) {
+				return start;
+			}
+			s = table[s + classes[c]];
+			if (s == DEAD) {
+				return start;
+			}
+		}
+		return (from == 0 ? dfa.eoi(s) : dfa.accepting(s)) ? from : start;
+	}
+
+}
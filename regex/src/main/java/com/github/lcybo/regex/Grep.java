@@ -0,0 +1,133 @@
+package com.github.lcybo.regex;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.lcybo.regex.Dfa.DEAD;
+import static com.github.lcybo.regex.NFA.CHAR_ASCII_END;
+
+/*
+ * The lines of a buffer that match, in one pass. Every line restarts the DFA, '^' and '$'
+ * hold at its ends; once a line is decided, accepted or dead, the scan jumps to the next
+ * '\n' with indexOf instead of stepping the DFA. A '\r' before the '\n' is part of the line.
+ */
+public class Grep {
+
+	public enum Mode {
+		// some match lies within the line, as grep does
+		CONTAINS,
+		// the whole line matches, as Simulation.test on every line
+		WHOLE
+	}
+
+	private final Dfa  dfa;
+	private final Mode mode;
+
+	Grep(Dfa dfa, Mode mode) {
+		this.dfa = dfa;
+		this.mode = mode;
+	}
+
+	static Grep of(NFAGraph graph, Mode mode) {
+		Program program = new Program(graph);
+		Dfa dfa = mode == Mode.CONTAINS ? Determinizer.leftmostLongest(program) : Determinizer.anchored(program);
+		return new Grep(dfa, mode);
+	}
+
+	public List<Line> lines(final CharSequence cs) {
+		final List<Line> lines = new ArrayList<>();
+		final int len = cs.length();
+		int number = 1;
+		for (int at = 0; at < len; number++) {
+			int end = mode == Mode.CONTAINS ? contains(cs, at, len) : whole(cs, at, len);
+			if (end < 0) {
+				end = newline(cs, ~end, len);
+			} else {
+				end = newline(cs, end, len);
+				lines.add(new Line(number, at, end));
+			}
+			at = end + 1;
+		}
+		return lines;
+	}
+
+	// over bytes without decoding them, spans are relative to offset
+	public List<Line> lines(byte[] bytes, int offset, int length) {
+		return lines(Bytes.of(bytes, offset, length));
+	}
+
+	// over the remaining bytes of the buffer, spans are relative to its position which is left alone
+	public List<Line> lines(ByteBuffer buffer) {
+		return lines(Bytes.of(buffer));
+	}
+
+	/*
+	 * Scans the line starting at from until it is decided: the offset where it was accepted,
+	 * or ~offset where it was rejected; either is before or at its '\n'.
+	 */
+	private int contains(final CharSequence cs, int from, int len) {
+		final Dfa dfa = this.dfa;
+		final byte[] classes = dfa.classes;
+		final int[] table = dfa.table;
+		int s = dfa.startText;
+		for (int i = from; i < len; i++) {
+			if (dfa.accepting(s)) {
+				return i;
+			}
+			char c = cs.charAt(i);
+			if (c == '\n') {
+				return dfa.eoi(s) ? i : ~i;
+			}
+			if (c >= CHAR_ASCII_END) {
+				// kills every thread, a new one starts behind it
+				s = dfa.start;
+				continue;
+			}
+			s = table[s + classes[c]];
+			if (s == DEAD) {
+				return ~i;
+			}
+		}
+		return dfa.eoi(s) ? len : ~len;
+	}
+
+	private int whole(final CharSequence cs, int from, int len) {
+		final Dfa dfa = this.dfa;
+		final byte[] classes = dfa.classes;
+		final int[] table = dfa.table;
+		int s = dfa.startText;
+		for (int i = from; i < len; i++) {
+			char c = cs.charAt(i);
+			if (c == '\n') {
+				return dfa.eoi(s) ? i : ~i;
+			}
+			if (c >= CHAR_ASCII_END) {
+				return ~i;
+			}
+			s = table[s + classes[c]];
+			if (s == DEAD) {
+				return ~i;
+			}
+		}
+		return dfa.eoi(s) ? len : ~len;
+	}
+
+	// the next '\n' at or after from, len if none
+	private static int newline(final CharSequence cs, int from, int len) {
+		if (cs instanceof String) {
+			int nl = ((String) cs).indexOf('\n', from);
+			return nl < 0 ? len : nl;
+		}
+		if (cs instanceof Bytes) {
+			return ((Bytes) cs).indexOf((byte) '\n', from);
+		}
+		for (int i = from; i < len; i++) {
+			if (cs.charAt(i) == '\n') {
+				return i;
+			}
+		}
+		return len;
+	}
+
+}
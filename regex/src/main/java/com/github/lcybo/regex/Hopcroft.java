@@ -0,0 +1,155 @@
+package com.github.lcybo.regex;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/*
+ * Hopcroft's partition refinement over a complete DFA: delta[s][a] is the successor of s on
+ * class a, states sharing an initial group id may only be merged if they are equivalent.
+ * Returns the block of every state, block ids are dense and ordered by their first state.
+ */
+final class Hopcroft {
+
+	private Hopcroft() {}
+
+	static int[] partition(int[][] delta, int[] groups) {
+		final int n = delta.length;
+		final int k = n == 0 ? 0 : delta[0].length;
+		// inverse transitions, preds[a][t] lists every s with delta[s][a] == t
+		final int[][][] preds = new int[k][n][];
+		for (int a = 0; a < k; a++) {
+			int[] count = new int[n];
+			for (int s = 0; s < n; s++) {
+				count[delta[s][a]]++;
+			}
+			for (int t = 0; t < n; t++) {
+				preds[a][t] = new int[count[t]];
+			}
+			for (int s = n - 1; s >= 0; s--) {
+				int t = delta[s][a];
+				preds[a][t][--count[t]] = s;
+			}
+		}
+
+		// block b owns elems[first[b] .. end[b])
+		final int[] elems = new int[n];
+		final int[] loc = new int[n];
+		final int[] blockOf = new int[n];
+		final int[] first = new int[n + 1];
+		final int[] end = new int[n + 1];
+		final int[] marked = new int[n + 1];
+		int blocks = initial(groups, elems, loc, blockOf, first, end);
+
+		final Deque<int[]> pending = new ArrayDeque<>();
+		final boolean[][] waiting = new boolean[n + 1][k];
+		for (int b = 0; b < blocks; b++) {
+			for (int a = 0; a < k; a++) {
+				pending.add(new int[]{b, a});
+				waiting[b][a] = true;
+			}
+		}
+		final int[] touched = new int[n];
+		while (!pending.isEmpty()) {
+			int[] splitter = pending.poll();
+			int b = splitter[0];
+			int a = splitter[1];
+			waiting[b][a] = false;
+			int[] members = Arrays.copyOfRange(elems, first[b], end[b]);
+			int touches = 0;
+			// move every predecessor to the front of its block
+			for (int t : members) {
+				for (int s : preds[a][t]) {
+					int y = blockOf[s];
+					int pos = loc[s];
+					int dst = first[y] + marked[y];
+					if (pos < dst) {
+						continue;
+					}
+					if (marked[y] == 0) {
+						touched[touches++] = y;
+					}
+					int other = elems[dst];
+					elems[dst] = s;
+					loc[s] = dst;
+					elems[pos] = other;
+					loc[other] = pos;
+					marked[y]++;
+				}
+			}
+			for (int i = 0; i < touches; i++) {
+				int y = touched[i];
+				int split = first[y] + marked[y];
+				marked[y] = 0;
+				if (split == end[y]) {
+					continue;
+				}
+				int z = blocks++;
+				first[z] = split;
+				end[z] = end[y];
+				end[y] = split;
+				for (int j = first[z]; j < end[z]; j++) {
+					blockOf[elems[j]] = z;
+				}
+				for (int c = 0; c < k; c++) {
+					if (waiting[y][c]) {
+						waiting[z][c] = true;
+						pending.add(new int[]{z, c});
+					} else {
+						int smaller = end[y] - first[y] <= end[z] - first[z] ? y : z;
+						waiting[smaller][c] = true;
+						pending.add(new int[]{smaller, c});
+					}
+				}
+			}
+		}
+		return renumber(blockOf, blocks);
+	}
+
+	private static int initial(int[] groups, int[] elems, int[] loc, int[] blockOf, int[] first, int[] end) {
+		final int n = groups.length;
+		int blocks = 0;
+		for (int g : groups) {
+			blocks = Math.max(blocks, g + 1);
+		}
+		final int[] count = new int[blocks];
+		for (int g : groups) {
+			count[g]++;
+		}
+		int pos = 0;
+		int used = 0;
+		final int[] ids = new int[blocks];
+		for (int g = 0; g < blocks; g++) {
+			ids[g] = count[g] == 0 ? -1 : used;
+			if (count[g] > 0) {
+				first[used] = pos;
+				end[used] = pos;
+				pos += count[g];
+				used++;
+			}
+		}
+		for (int s = 0; s < n; s++) {
+			int b = ids[groups[s]];
+			blockOf[s] = b;
+			loc[s] = end[b];
+			elems[end[b]++] = s;
+		}
+		return used;
+	}
+
+	private static int[] renumber(int[] blockOf, int blocks) {
+		final int[] ids = new int[blocks];
+		Arrays.fill(ids, -1);
+		int next = 0;
+		final int[] result = new int[blockOf.length];
+		for (int s = 0; s < blockOf.length; s++) {
+			int b = blockOf[s];
+			if (ids[b] < 0) {
+				ids[b] = next++;
+			}
+			result[s] = ids[b];
+		}
+		return result;
+	}
+
+}
@@ -0,0 +1,171 @@
+package com.github.lcybo.regex;
+
+import org.jctools.maps.NonBlockingHashMap;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.github.lcybo.regex.NFA.CHAR_ASCII_END;
+
+/*
+ * DFA built on demand while matching. Discovered states are shared by all matching threads
+ * through a lock-free cache; once the cache holds more than `budget` states it is replaced
+ * by an empty one, and a match that keeps flushing falls back to stepping the NFA.
+ */
+public class LazyDfa {
+
+	static final int DEFAULT_BUDGET = 10_000;
+
+	// a search is thrashing if it flushes again before scanning this many chars per state
+	static final int MIN_CHARS_PER_STATE = 10;
+
+	private final Program program;
+	private final byte[]  classes;
+	private final int     budget;
+
+	private volatile Cache cache;
+
+	private final AtomicLong flushes  = new AtomicLong();
+	private final AtomicLong fallback = new AtomicLong();
+
+	LazyDfa(Program program, int budget) {
+		if (budget < 2) {
+			throw new IllegalArgumentException("Budget too small: " + budget);
+		}
+		this.program = program;
+		this.classes = program.alphabet.classes;
+		this.budget = budget;
+		this.cache = new Cache();
+	}
+
+	public boolean matches(final CharSequence cs) {
+		Cache cache = this.cache;
+		State s = cache.startText;
+		int flushed = -1;
+		for (int i = 0, len = cs.length(); i < len; i++) {
+			char c = cs.charAt(i);
+			if (c >= CHAR_ASCII_END) {
+				return false;
+			}
+			int cls = classes[c];
+			State next = s.next[cls];
+			if (next == null) {
+				next = transit(s, cls);
+				if (next.owner != cache) {
+					// cache flushed underneath this search
+					if (flushed >= 0 && i - flushed < MIN_CHARS_PER_STATE * budget) {
+						fallback.incrementAndGet();
+						return new PikeVM(program).test(next.nfas, cs, i + 1);
+					}
+					cache = next.owner;
+					flushed = i;
+				}
+			}
+			s = next;
+			if (s.nfas.length == 0) {
+				return false;
+			}
+		}
+		return s.eoi;
+	}
+
+	private State transit(State from, int cls) {
+		Cache cache = this.cache;
+		if (from.owner != cache) {
+			from = cache.intern(from.nfas);
+		}
+		State to = from.owner.intern(program.step(from.nfas, cls));
+		if (to.owner == from.owner) {
+			from.next[cls] = to;
+		}
+		return to;
+	}
+
+	private void flush(Cache full) {
+		if (this.cache == full) {
+			synchronized (this) {
+				if (this.cache == full) {
+					this.cache = new Cache();
+					flushes.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	public int states() {
+		return cache.size.get();
+	}
+
+	public long flushes() {
+		return flushes.get();
+	}
+
+	public long fallbacks() {
+		return fallback.get();
+	}
+
+	private final class Cache {
+
+		final NonBlockingHashMap<State, State> states = new NonBlockingHashMap<>();
+		final AtomicInteger size = new AtomicInteger();
+		final State startText;
+
+		Cache() {
+			startText = add(new State(this, program.startText));
+		}
+
+		State intern(int[] nfas) {
+			State candidate = new State(this, nfas);
+			State found = states.get(candidate);
+			if (found != null) {
+				return found;
+			}
+			if (size.get() >= budget) {
+				flush(this);
+				return LazyDfa.this.cache.intern(nfas);
+			}
+			return add(candidate);
+		}
+
+		private State add(State candidate) {
+			State found = states.putIfAbsent(candidate, candidate);
+			if (found != null) {
+				return found;
+			}
+			size.incrementAndGet();
+			return candidate;
+		}
+
+	}
+
+	private final class State {
+
+		final Cache   owner;
+		final int[]   nfas;
+		final boolean eoi;
+		final int     hash;
+		// written racily, a lost update only costs a recomputation
+		final State[] next;
+
+		State(Cache owner, int[] nfas) {
+			this.owner = owner;
+			this.nfas = nfas;
+			this.eoi = program.eoi(nfas);
+			this.hash = Arrays.hashCode(nfas);
+			this.next = new State[program.alphabet.size()];
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof State && Arrays.equals(nfas, ((State) o).nfas);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+	}
+
+}
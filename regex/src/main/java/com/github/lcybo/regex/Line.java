@@ -0,0 +1,56 @@
+package com.github.lcybo.regex;
+
+import java.util.Objects;
+
+// a line of the input: its number, counted from 1, and its span [start, end) without the '\n'
+public class Line {
+
+	final int number;
+
+	final int start;
+
+	final int end;
+
+	Line(int number, int start, int end) {
+		this.number = number;
+		this.start = start;
+		this.end = end;
+	}
+
+	public int number() {
+		return number;
+	}
+
+	public int start() {
+		return start;
+	}
+
+	public int end() {
+		return end;
+	}
+
+	public CharSequence of(CharSequence cs) {
+		return cs.subSequence(start, end);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		Line line = (Line) o;
+		return number == line.number &&
+				start == line.start &&
+				end == line.end;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(number, start, end);
+	}
+
+	@Override
+	public String toString() {
+		return number + ":[" + start + ", " + end + ")";
+	}
+
+}
@@ -0,0 +1,406 @@
+package com.github.lcybo.regex;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Literal analysis over a Program.
+ */
+final class Literals {
+
+	static final int MAX_LENGTH = 256;
+
+	// limits on the prefix set, total counts the chars of every round
+	static final int MAX_LITERALS = 128;
+	static final int MAX_TOTAL    = 4096;
+
+	// dominators are computed with n^2 bits, bigger programs get no factors
+	static final int MAX_STATES = 4096;
+
+	static final int UNBOUNDED = -1;
+
+	private Literals() {}
+
+	/*
+	 * Longest string every match starts with, the common prefix of the prefix set.
+	 */
+	static String prefix(Program program) {
+		final List<String> prefixes = prefixes(program);
+		if (prefixes.isEmpty()) {
+			return "";
+		}
+		String prefix = prefixes.get(0);
+		for (String p : prefixes) {
+			int i = 0;
+			while (i < prefix.length() && i < p.length() && prefix.charAt(i) == p.charAt(i)) {
+				i++;
+			}
+			prefix = prefix.substring(0, i);
+		}
+		return prefix;
+	}
+
+	/*
+	 * Literals one of which every match starts with, sorted. A branch is extended while all
+	 * its live threads wait for single chars, one char per round so that the branches stay
+	 * balanced when a limit stops them; any class, anchor or reachable terminal stops it.
+	 * Empty if some match may start without a literal, or the start depends on '^'.
+	 */
+	static List<String> prefixes(Program program) {
+		if (program.start != program.startText) {
+			return List.of();
+		}
+		List<Branch> branches = List.of(new Branch("", program.start));
+		int total = 0;
+		for (int round = 1; round <= MAX_LENGTH; round++) {
+			boolean grown = false;
+			final List<Branch> next = new ArrayList<>();
+			for (Branch branch : branches) {
+				List<Branch> children = branch.extend(program);
+				if (children.isEmpty()) {
+					next.add(branch);
+				} else {
+					next.addAll(children);
+					grown = true;
+				}
+			}
+			total += next.size();
+			if (!grown || next.size() > MAX_LITERALS || total > MAX_TOTAL) {
+				break;
+			}
+			branches = next;
+		}
+		final List<String> prefixes = new ArrayList<>();
+		for (Branch branch : branches) {
+			if (branch.literal.isEmpty()) {
+				return List.of();
+			}
+			prefixes.add(branch.literal);
+		}
+		Collections.sort(prefixes);
+		return prefixes;
+	}
+
+	private static final class Branch {
+
+		final String literal;
+		final int[]  set;
+
+		Branch(String literal, int[] set) {
+			this.literal = literal;
+			this.set = set;
+		}
+
+		// one branch per char the threads wait for, none if the branch stops here
+		List<Branch> extend(Program program) {
+			final Map<Character, boolean[]> successors = new TreeMap<>();
+			for (int s : set) {
+				Label label = program.labels[s];
+				if (!(label instanceof Single)) {
+					return List.of();
+				}
+				boolean[] in = successors.computeIfAbsent(label.first(), c -> new boolean[program.size()]);
+				for (int t : program.closures[program.next[s]]) {
+					in[t] = true;
+				}
+			}
+			final List<Branch> children = new ArrayList<>();
+			successors.forEach((c, in) -> {
+				int count = 0;
+				for (boolean b : in) {
+					if (b) count++;
+				}
+				int[] next = new int[count];
+				for (int t = 0, j = 0; t < in.length; t++) {
+					if (in[t]) next[j++] = t;
+				}
+				children.add(new Branch(literal + c, next));
+			});
+			return children;
+		}
+
+	}
+
+	/*
+	 * Literals every match contains: runs of single char states that dominate the terminal,
+	 * each one forcing the next. Offsets bound how many chars a match consumes before the
+	 * factor, max is UNBOUNDED if a loop may run first.
+	 */
+	static List<Factor> factors(Program program) {
+		final int n = program.size();
+		if (n > MAX_STATES) {
+			return List.of();
+		}
+		final int root = n;
+		final int[][] succs = new int[n + 1][];
+		succs[root] = program.follow(program.start, NFA.Begin.class);
+		for (int s = 0; s < n; s++) {
+			Label label = program.labels[s];
+			succs[s] = label == null || label == Label.XI ? new int[0] : program.closures[program.next[s]];
+		}
+		int terminal = -1;
+		for (int s = 0; s < n; s++) {
+			if (program.terminal[s]) {
+				terminal = s;
+			}
+		}
+		final long[][] doms = dominators(succs, root);
+		if (terminal < 0 || doms[terminal] == null) {
+			return List.of();
+		}
+		// dominators of the terminal form a chain, ordered by depth
+		final List<Integer> chain = new ArrayList<>();
+		for (int s = 0; s < n; s++) {
+			if ((doms[terminal][s >>> 6] & (1L << s)) != 0) {
+				chain.add(s);
+			}
+		}
+		chain.sort(Comparator.comparingInt(s -> cardinality(doms[s])));
+		final List<Factor> factors = new ArrayList<>();
+		StringBuilder run = null;
+		int first = -1;
+		for (int i = 0; i < chain.size(); i++) {
+			int s = chain.get(i);
+			if (!(program.labels[s] instanceof Single)) {
+				run = null;
+				continue;
+			}
+			if (run == null) {
+				run = new StringBuilder();
+				first = s;
+			}
+			run.append(program.labels[s].first());
+			int[] succ = succs[s];
+			boolean forced = i + 1 < chain.size() && succ.length == 1 && succ[0] == chain.get(i + 1)
+					&& program.labels[succ[0]] instanceof Single;
+			if (!forced) {
+				factors.add(offsets(program, succs, root, first, run.toString()));
+				run = null;
+			}
+		}
+		return factors;
+	}
+
+	private static long[][] dominators(int[][] succs, int root) {
+		final int n = succs.length;
+		final int words = (n + 63) >>> 6;
+		final List<Integer> order = new ArrayList<>();
+		final List<List<Integer>> preds = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			preds.add(new ArrayList<>());
+		}
+		final boolean[] reached = new boolean[n];
+		final Deque<Integer> queue = new ArrayDeque<>();
+		queue.add(root);
+		reached[root] = true;
+		while (!queue.isEmpty()) {
+			int s = queue.poll();
+			order.add(s);
+			for (int t : succs[s]) {
+				preds.get(t).add(s);
+				if (!reached[t]) {
+					reached[t] = true;
+					queue.add(t);
+				}
+			}
+		}
+		final long[][] doms = new long[n][];
+		for (int s : order) {
+			doms[s] = new long[words];
+			if (s == root) {
+				doms[s][s >>> 6] |= 1L << s;
+			} else {
+				Arrays.fill(doms[s], -1L);
+			}
+		}
+		final long[] meet = new long[words];
+		for (boolean changed = true; changed; ) {
+			changed = false;
+			for (int s : order) {
+				if (s == root) {
+					continue;
+				}
+				Arrays.fill(meet, -1L);
+				for (int p : preds.get(s)) {
+					for (int w = 0; w < words; w++) {
+						meet[w] &= doms[p][w];
+					}
+				}
+				meet[s >>> 6] |= 1L << s;
+				if (!Arrays.equals(meet, doms[s])) {
+					System.arraycopy(meet, 0, doms[s], 0, words);
+					changed = true;
+				}
+			}
+		}
+		return doms;
+	}
+
+	// chars consumed from the match start to the first arrival at target
+	private static Factor offsets(Program program, int[][] succs, int root, int target, String literal) {
+		final int n = succs.length;
+		// nodes on some root -> target path not crossing target before
+		final boolean[] forward = new boolean[n];
+		final List<List<Integer>> preds = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			preds.add(new ArrayList<>());
+		}
+		final Deque<Integer> queue = new ArrayDeque<>();
+		queue.add(root);
+		forward[root] = true;
+		while (!queue.isEmpty()) {
+			int s = queue.poll();
+			if (s == target) {
+				continue;
+			}
+			for (int t : succs[s]) {
+				preds.get(t).add(s);
+				if (!forward[t]) {
+					forward[t] = true;
+					queue.add(t);
+				}
+			}
+		}
+		final boolean[] path = new boolean[n];
+		queue.add(target);
+		path[target] = true;
+		while (!queue.isEmpty()) {
+			for (int p : preds.get(queue.poll())) {
+				if (!path[p]) {
+					path[p] = true;
+					queue.add(p);
+				}
+			}
+		}
+		final int[] max = new int[n];
+		final int[] state = new int[n];
+		final boolean[] loop = new boolean[1];
+		longest(program, succs, root, target, path, state, max, loop);
+		return new Factor(literal, shortest(program, succs, root, target, path), loop[0] ? UNBOUNDED : max[root]);
+	}
+
+	// fewest chars from root to target, 0-1 breadth first: the weight of an edge is its source's
+	private static int shortest(Program program, int[][] succs, int root, int target, boolean[] path) {
+		final int[] dist = new int[succs.length];
+		Arrays.fill(dist, Integer.MAX_VALUE);
+		final Deque<Integer> queue = new ArrayDeque<>();
+		dist[root] = 0;
+		queue.add(root);
+		while (!queue.isEmpty()) {
+			int s = queue.poll();
+			if (s == target) {
+				continue;
+			}
+			int weight = s < program.size() && consumes(program.labels[s]) ? 1 : 0;
+			for (int t : succs[s]) {
+				if (path[t] && dist[s] + weight < dist[t]) {
+					dist[t] = dist[s] + weight;
+					if (weight == 0) {
+						queue.addFirst(t);
+					} else {
+						queue.addLast(t);
+					}
+				}
+			}
+		}
+		// target lies on a path from root, the distance is finite
+		return dist[target];
+	}
+
+	// depth first over the path nodes, state 1 while on the stack and 2 when done; max is only
+	// exact without a loop, which is all it is used for
+	private static void longest(Program program, int[][] succs, int s, int target, boolean[] path,
+								int[] state, int[] max, boolean[] loop) {
+		state[s] = 1;
+		if (s != target) {
+			int weight = s < program.size() && consumes(program.labels[s]) ? 1 : 0;
+			for (int t : succs[s]) {
+				if (!path[t]) {
+					continue;
+				}
+				if (state[t] == 0) {
+					longest(program, succs, t, target, path, state, max, loop);
+				}
+				if (state[t] == 1) {
+					// a back edge, the path may run through a loop
+					loop[0] = true;
+					continue;
+				}
+				max[s] = Math.max(max[s], max[t] + weight);
+			}
+		}
+		state[s] = 2;
+	}
+
+	private static boolean consumes(Label label) {
+		return label != null && label != Label.XI && !(label instanceof NFA.Begin) && !(label instanceof NFA.End);
+	}
+
+	private static int cardinality(long[] bits) {
+		int count = 0;
+		for (long w : bits) {
+			count += Long.bitCount(w);
+		}
+		return count;
+	}
+
+	// rough odds of finding the literal at a given position of typical text, lower is rarer
+	static double frequency(String literal) {
+		double p = 1;
+		for (int i = 0; i < literal.length(); i++) {
+			char c = literal.charAt(i);
+			int f;
+			if (c == ' ') {
+				f = 200;
+			} else if ("etaoinshrl".indexOf(c) >= 0) {
+				f = 160;
+			} else if (NFA.isLower(c)) {
+				f = 100;
+			} else if (NFA.isDigit(c)) {
+				f = 90;
+			} else if (NFA.isUpper(c)) {
+				f = 50;
+			} else if (".,-_:/=".indexOf(c) >= 0) {
+				f = 40;
+			} else if (c >= '!' && c < 0x7f) {
+				f = 15;
+			} else {
+				f = 5;
+			}
+			p *= f / 256.0;
+		}
+		return p;
+	}
+
+	static final class Factor {
+
+		final String literal;
+		// chars a match consumes before the factor starts
+		final int    min;
+		final int    max;
+
+		Factor(String literal, int min, int max) {
+			this.literal = literal;
+			this.min = Math.max(0, min);
+			this.max = max;
+		}
+
+		boolean bounded() {
+			return max != UNBOUNDED;
+		}
+
+		@Override
+		public String toString() {
+			return "\"" + literal + "\" at [" + min + ", " + (bounded() ? String.valueOf(max) : "inf") + "]";
+		}
+
+	}
+
+}
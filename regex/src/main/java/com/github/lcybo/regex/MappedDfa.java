@@ -0,0 +1,154 @@
+package com.github.lcybo.regex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.github.lcybo.regex.Dfa.DEAD;
+import static com.github.lcybo.regex.NFA.CHAR_ASCII_END;
+
+/*
+ * A Dfa written by Dfa.write, matched in place: the table and the bitmaps are read from the
+ * buffer, typically a read-only mapping of the file, so loading costs one pass of validation
+ * and processes mapping the same file share its pages. Only the 128 char classes are copied.
+ * Thread-safe, the buffer is only read with absolute gets.
+ */
+public class MappedDfa {
+
+	static final int MAGIC   = 0x4c444641; // "LDFA"
+	static final int VERSION = 1;
+
+	static final int HEADER = 24;
+
+	private final ByteBuffer buffer;
+	private final byte[]     classes = new byte[CHAR_ASCII_END];
+	private final int        stride;
+	private final int        shift;
+	private final int        states;
+	private final int        start;
+	private final int        startText;
+
+	// byte offsets of the sections in the buffer
+	private final int table;
+	private final int accepts;
+	private final int eois;
+
+	// the bytes from the buffer's position to its limit, which must hold exactly one DFA
+	public MappedDfa(ByteBuffer buffer) {
+		final ByteBuffer b = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+		if (b.limit() < HEADER + CHAR_ASCII_END || b.getInt(0) != MAGIC) {
+			throw new IllegalStateException("Not a compiled DFA");
+		}
+		if (b.getShort(4) != VERSION) {
+			throw new IllegalStateException("Unsupported DFA version " + b.getShort(4));
+		}
+		this.buffer = b;
+		this.stride = b.getInt(8);
+		this.states = b.getInt(12);
+		if (stride < 1 || Integer.bitCount(stride) != 1 || states < 1 || (long) states * stride > Integer.MAX_VALUE / 4) {
+			throw new IllegalStateException("Corrupt DFA: stride " + stride + ", " + states + " states");
+		}
+		this.shift = Integer.numberOfTrailingZeros(stride);
+		final int words = (states + 63) >>> 6;
+		this.table = HEADER + CHAR_ASCII_END;
+		this.accepts = table + (states * stride << 2);
+		this.eois = accepts + (words << 3);
+		if (b.limit() != eois + (words << 3)) {
+			throw new IllegalStateException("Corrupt DFA: " + b.limit() + " bytes, expected " + (eois + (words << 3)));
+		}
+		this.start = check(b.getInt(16));
+		this.startText = check(b.getInt(20));
+		for (int c = 0; c < CHAR_ASCII_END; c++) {
+			classes[c] = b.get(HEADER + c);
+			if (classes[c] < 0 || classes[c] >= stride) {
+				throw new IllegalStateException("Corrupt DFA: class " + classes[c] + " of char " + c);
+			}
+		}
+		// every successor is a state, so matching needs no bounds checks of its own
+		for (int i = table; i < accepts; i += 4) {
+			check(b.getInt(i));
+		}
+	}
+
+	public static MappedDfa load(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			// the mapping outlives the channel
+			return new MappedDfa(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
+	private int check(int s) {
+		if (s < 0 || (s & (stride - 1)) != 0 || s >>> shift >= states) {
+			throw new IllegalStateException("Corrupt DFA: state " + s);
+		}
+		return s;
+	}
+
+	public boolean matches(final CharSequence cs) {
+		final ByteBuffer buffer = this.buffer;
+		final byte[] classes = this.classes;
+		final int table = this.table;
+		int s = startText;
+		for (int i = 0, len = cs.length(); i < len; i++) {
+			char c = cs.charAt(i);
+			if (c >= CHAR_ASCII_END) {
+				return false;
+			}
+			s = buffer.getInt(table + (s + classes[c] << 2));
+			if (s == DEAD) {
+				return false;
+			}
+		}
+		return eoi(s);
+	}
+
+	// bytes from 0x80 up never match
+	public boolean matches(final byte[] bytes, int offset, int length) {
+		if (offset < 0 || length < 0 || offset + length > bytes.length) {
+			throw new IndexOutOfBoundsException("offset: " + offset + ", length: " + length + ", size: " + bytes.length);
+		}
+		final ByteBuffer buffer = this.buffer;
+		final byte[] classes = this.classes;
+		final int table = this.table;
+		int s = startText;
+		for (int i = offset, end = offset + length; i < end; i++) {
+			byte b = bytes[i];
+			if (b < 0) {
+				return false;
+			}
+			s = buffer.getInt(table + (s + classes[b] << 2));
+			if (s == DEAD) {
+				return false;
+			}
+		}
+		return eoi(s);
+	}
+
+	// into a heap Dfa, for Finder and the other users of the table
+	public Dfa toDfa() {
+		final int[] table = new int[states * stride];
+		for (int i = 0; i < table.length; i++) {
+			table[i] = buffer.getInt(this.table + (i << 2));
+		}
+		final long[] accepts = new long[(states + 63) >>> 6];
+		final long[] eois = new long[accepts.length];
+		for (int w = 0; w < accepts.length; w++) {
+			accepts[w] = buffer.getLong(this.accepts + (w << 3));
+			eois[w] = buffer.getLong(this.eois + (w << 3));
+		}
+		return new Dfa(classes.clone(), stride, table, start, startText, accepts, eois);
+	}
+
+	private boolean eoi(int s) {
+		int i = s >>> shift;
+		return (buffer.getLong(eois + (i >>> 6 << 3)) & (1L << i)) != 0;
+	}
+
+	public int states() {
+		return states;
+	}
+
+}
@@ -0,0 +1,214 @@
+package com.github.lcybo.regex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.github.lcybo.regex.Dfa.DEAD;
+
+/*
+ * Successive leftmost-longest matches in a file, found by the Finder's forward and reverse DFAs
+ * running over the bytes mapped in windows of at most `window` bytes. The DFA state is carried
+ * from one window to the next, so matches spanning a window boundary are found whole; the
+ * reverse pass maps backward when the start lies in an earlier window. Bytes from 0x80 up
+ * never match. Not thread-safe.
+ */
+public class MappedScan implements Iterator<FileMatch>, Spliterator<FileMatch>, Closeable {
+
+	static final int DEFAULT_WINDOW = 1 << 30;
+
+	private final Dfa         forward;
+	private final Dfa         reverse;
+	private final FileChannel channel;
+	// whether the channel was opened by the scan and is closed with it
+	private final boolean     owned;
+	private final long        size;
+	private final int         window;
+
+	// the mapped window, bytes [base, base + buffer.limit()) of the file
+	private MappedByteBuffer buffer;
+	private long             base;
+
+	private long      from;
+	private FileMatch next;
+
+	MappedScan(Finder finder, FileChannel channel, boolean owned, int window) {
+		if (window < 1) {
+			throw new IllegalArgumentException("Window too small: " + window);
+		}
+		this.forward = finder.forward;
+		this.reverse = finder.reverse;
+		this.channel = channel;
+		this.owned = owned;
+		this.window = window;
+		try {
+			this.size = channel.size();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// maps the window starting at pos, or ending right after it when backward
+	private void map(long pos, boolean backward) {
+		if (buffer != null && pos >= base && pos < base + buffer.limit()) {
+			return;
+		}
+		long from = backward ? Math.max(0, pos + 1 - window) : pos;
+		long length = Math.min(window, size - from);
+		try {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		base = from;
+	}
+
+	private long end(long from) {
+		final Dfa dfa = forward;
+		final byte[] classes = dfa.classes;
+		final int[] table = dfa.table;
+		int s = from == 0 ? dfa.startText : dfa.start;
+		long end = -1;
+		for (long pos = from; pos < size; ) {
+			map(pos, false);
+			final MappedByteBuffer buffer = this.buffer;
+			final int limit = buffer.limit();
+			for (int i = (int) (pos - base); i < limit; i++) {
+				if (dfa.accepting(s)) {
+					end = base + i;
+				}
+				byte b = buffer.get(i);
+				if (b < 0) {
+					// kills every thread, a new one starts behind it unless something matched already
+					if (end >= 0) {
+						return end;
+					}
+					s = dfa.start;
+					continue;
+				}
+				s = table[s + classes[b]];
+				if (s == DEAD) {
+					return end;
+				}
+			}
+			pos = base + limit;
+		}
+		return dfa.eoi(s) ? size : end;
+	}
+
+	private long start(long from, long end) {
+		final Dfa dfa = reverse;
+		final byte[] classes = dfa.classes;
+		final int[] table = dfa.table;
+		int s = end == size ? dfa.startText : dfa.start;
+		long start = end;
+		for (long pos = end - 1; pos >= from; ) {
+			map(pos, true);
+			final MappedByteBuffer buffer = this.buffer;
+			final int low = (int) Math.max(0, from - base);
+			for (int i = (int) (pos - base); i >= low; i--) {
+				if (dfa.accepting(s)) {
+					start = base + i + 1;
+				}
+				byte b = buffer.get(i);
+				if (b < 0) {
+					return start;
+				}
+				s = table[s + classes[b]];
+				if (s == DEAD) {
+					return start;
+				}
+			}
+			pos = base + low - 1;
+		}
+		return (from == 0 ? dfa.eoi(s) : dfa.accepting(s)) ? from : start;
+	}
+
+	private FileMatch advance() {
+		if (next == null && from <= size) {
+			long end = end(from);
+			if (end < 0) {
+				from = size + 1;
+			} else {
+				next = new FileMatch(start(from, end), end);
+				from = next.end == next.start ? next.end + 1 : next.end;
+			}
+		}
+		return next;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return advance() != null;
+	}
+
+	@Override
+	public FileMatch next() {
+		FileMatch match = advance();
+		if (match == null) {
+			throw new NoSuchElementException();
+		}
+		next = null;
+		return match;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super FileMatch> action) {
+		FileMatch match = advance();
+		if (match == null) {
+			return false;
+		}
+		next = null;
+		action.accept(match);
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super FileMatch> action) {
+		while (tryAdvance(action)) {
+		}
+	}
+
+	@Override
+	public Spliterator<FileMatch> trySplit() {
+		return null;
+	}
+
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL | IMMUTABLE;
+	}
+
+	// closing the stream closes the scan
+	public Stream<FileMatch> stream() {
+		return StreamSupport.stream(this, false).onClose(() -> {
+			try {
+				close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+	}
+
+	@Override
+	public void close() throws IOException {
+		buffer = null;
+		if (owned) {
+			channel.close();
+		}
+	}
+
+}
@@ -0,0 +1,48 @@
+package com.github.lcybo.regex;
+
+import java.util.Objects;
+
+// span [start, end) of a match in the input
+public class Match {
+
+	final int start;
+
+	final int end;
+
+	Match(int start, int end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	public int start() {
+		return start;
+	}
+
+	public int end() {
+		return end;
+	}
+
+	public CharSequence of(CharSequence cs) {
+		return cs.subSequence(start, end);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) return true;
+		if (o == null || getClass() != o.getClass()) return false;
+		Match match = (Match) o;
+		return start == match.start &&
+				end == match.end;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(start, end);
+	}
+
+	@Override
+	public String toString() {
+		return "[" + start + ", " + end + ")";
+	}
+
+}
@@ -0,0 +1,85 @@
+package com.github.lcybo.regex;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/*
+ * Lazy sequence of the successive non-overlapping matches, each search resumes where the
+ * previous match ended (one char further after an empty match). Shares the searcher, so it is
+ * no more thread-safe than the searcher itself.
+ */
+public class Matches implements Iterator<Match>, Spliterator<Match> {
+
+	private final Searcher     searcher;
+	private final CharSequence cs;
+
+	private int   from;
+	private Match next;
+
+	Matches(Searcher searcher, CharSequence cs) {
+		this.searcher = searcher;
+		this.cs = cs;
+	}
+
+	private Match advance() {
+		if (next == null && from <= cs.length()) {
+			next = searcher.find(cs, from);
+			if (next == null) {
+				from = cs.length() + 1;
+			} else {
+				from = next.end == next.start ? next.end + 1 : next.end;
+			}
+		}
+		return next;
+	}
+
+	@Override
+	public boolean hasNext() {
+		return advance() != null;
+	}
+
+	@Override
+	public Match next() {
+		Match match = advance();
+		if (match == null) {
+			throw new NoSuchElementException();
+		}
+		next = null;
+		return match;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Match> action) {
+		Match match = advance();
+		if (match == null) {
+			return false;
+		}
+		next = null;
+		action.accept(match);
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super Match> action) {
+		while (tryAdvance(action)) {
+		}
+	}
+
+	@Override
+	public Spliterator<Match> trySplit() {
+		return null;
+	}
+
+	@Override
+	public long estimateSize() {
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL | IMMUTABLE;
+	}
+
+}
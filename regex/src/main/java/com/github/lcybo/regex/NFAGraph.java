@@ -1,17 +1,12 @@
 package com.github.lcybo.regex;
 
-import com.github.lcybo.regex.jdk.utils.Interval;
-import com.github.lcybo.regex.jdk.utils.IntervalNode;
-import com.github.lcybo.regex.jdk.utils.IntervalTree;
-import com.github.lcybo.regex.jdk.utils.RBNode;
 import org.jctools.maps.NonBlockingHashSet;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.Deque;
-import java.util.HashSet;
 import java.util.IdentityHashMap;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +26,10 @@ public class NFAGraph {
 	private NFANode start;
 	private NFANode fin;
 
+	// nodes numbered from start and their ε-closures, see finish()
+	private NFANode[] states;
+	private int[][]   closures;
+
 	NFAGraph() {}
 
 	NFAGraph(Label label) {
@@ -38,6 +37,8 @@ public class NFAGraph {
 	}
 
 	public NFAGraph concat(NFAGraph other) {
+		changed();
+		other.changed();
 		if (start == null) {
 			start = other.start;
 			fin = other.fin;
@@ -52,6 +53,8 @@ public class NFAGraph {
 	}
 
 	public NFAGraph union(NFAGraph other) {
+		changed();
+		other.changed();
 		NFANode nin = new NFANode();
 		NFANode nout = new NFANode();
 		nodes.addFirst(nin);
@@ -67,6 +70,7 @@ public class NFAGraph {
 	}
 
 	public NFAGraph exists() {
+		changed();
 		NFANode nin = new NFANode();
 		NFANode nout = new NFANode();
 		nodes.addFirst(nin);
@@ -80,6 +84,7 @@ public class NFAGraph {
 	}
 
 	public NFAGraph closure() {
+		changed();
 		NFANode nin = new NFANode();
 		NFANode nout = new NFANode();
 		nodes.addFirst(nin);
@@ -94,6 +99,7 @@ public class NFAGraph {
 	}
 
 	public NFAGraph append(Label label, NFANode node) {
+		changed();
 		nodes.addLast(node);
 		if (start == null) {
 			start = new NFANode();
@@ -118,6 +124,80 @@ public class NFAGraph {
 		return graph;
 	}
 
+	/*
+	 * Graph of the reversed language: every edge flipped, '^' and '$' swapped, start and fin
+	 * exchanged. A node left with several outgoing edges fans them out through ε nodes.
+	 */
+	public NFAGraph reverse() {
+		final Map<NFANode, NFANode> reversed = new IdentityHashMap<>();
+		final Map<NFANode, List<NFANode>> incoming = new IdentityHashMap<>();
+		final Deque<NFANode> pending = new ArrayDeque<>();
+		final NFAGraph graph = new NFAGraph();
+		graph.fin = new NFANode();
+		if (start == null) {
+			graph.start = graph.fin;
+			graph.nodes.add(graph.fin);
+			return graph;
+		}
+		pending.add(start);
+		reversed.put(start, new NFANode());
+		while (!pending.isEmpty()) {
+			NFANode node = pending.poll();
+			for (NFANode out : node.outgoing) {
+				incoming.computeIfAbsent(out, n -> new ArrayList<>()).add(node);
+				if (!reversed.containsKey(out)) {
+					reversed.put(out, new NFANode());
+					pending.add(out);
+				}
+			}
+		}
+		reversed.forEach((node, r) -> {
+			final List<Label> labels = new ArrayList<>();
+			final List<NFANode> targets = new ArrayList<>();
+			incoming.getOrDefault(node, List.of()).forEach(in -> {
+				labels.add(swap(in.label));
+				targets.add(reversed.get(in));
+			});
+			if (node == start) {
+				labels.add(XI);
+				targets.add(graph.fin);
+			}
+			fan(graph, r, labels, targets, 0);
+		});
+		graph.start = reversed.get(fin);
+		graph.nodes.addAll(reversed.values());
+		graph.nodes.remove(graph.start);
+		graph.nodes.addFirst(graph.start);
+		graph.nodes.addLast(graph.fin);
+		return graph;
+	}
+
+	private static void fan(NFAGraph graph, NFANode node, List<Label> labels, List<NFANode> targets, int from) {
+		final int remaining = labels.size() - from;
+		if (remaining == 1) {
+			node.route(labels.get(from), targets.get(from));
+		} else if (remaining > 1) {
+			NFANode first = new NFANode();
+			first.route(labels.get(from), targets.get(from));
+			NFANode rest = new NFANode();
+			fan(graph, rest, labels, targets, from + 1);
+			graph.nodes.add(first);
+			graph.nodes.add(rest);
+			node.route(XI, first);
+			node.route(XI, rest);
+		}
+	}
+
+	private static Label swap(Label label) {
+		if (label == NFA.BEGIN) {
+			return NFA.END;
+		}
+		if (label == NFA.END) {
+			return NFA.BEGIN;
+		}
+		return label;
+	}
+
 	private static final String LF        = System.lineSeparator();
 	private static final String INTENT    = "  ";
 
@@ -144,10 +224,164 @@ public class NFAGraph {
 		return sb.toString();
 	}
 
+	/*
+	 * Numbers the nodes depth first from start, in the order Program uses, and computes every
+	 * ε-closure once: the sorted ids of the nodes reachable through ε edges, the node itself
+	 * included. The nodes keep theirs for xi() and move(). Any change to the graph drops them.
+	 * Synchronized: every compiler of a shared graph finishes it first, so the thread that does
+	 * the work publishes the numbering to the others.
+	 */
+	synchronized void finish() {
+		if (states != null || start == null) {
+			return;
+		}
+		final NFANode[] states = number(start);
+		final int[][] closures = closures(states);
+		for (int i = 0; i < states.length; i++) {
+			states[i].id = i;
+			states[i].closure = closures[i];
+			states[i].states = states;
+		}
+		this.states = states;
+		this.closures = closures;
+	}
+
+	private synchronized void changed() {
+		if (states != null) {
+			for (NFANode node : states) {
+				node.id = -1;
+				node.closure = null;
+				node.states = null;
+			}
+			states = null;
+			closures = null;
+		}
+	}
+
+	NFANode[] states() {
+		finish();
+		return states;
+	}
+
+	int[][] closures() {
+		finish();
+		return closures;
+	}
+
+	// the nodes reachable from entry, entry first, depth first
+	static NFANode[] number(NFANode entry) {
+		final Map<NFANode, Integer> ids = new IdentityHashMap<>();
+		final List<NFANode> nodes = new ArrayList<>();
+		final Deque<NFANode> stack = new ArrayDeque<>();
+		stack.push(entry);
+		ids.put(entry, 0);
+		nodes.add(entry);
+		while (!stack.isEmpty()) {
+			for (NFANode out : stack.pop().outgoing) {
+				if (!ids.containsKey(out)) {
+					ids.put(out, nodes.size());
+					nodes.add(out);
+					stack.push(out);
+				}
+			}
+		}
+		return nodes.toArray(new NFANode[0]);
+	}
+
+	// ε-closures of numbered nodes, the ε cycles of closure() are cut by the seen marks
+	static int[][] closures(NFANode[] states) {
+		final int n = states.length;
+		final Map<NFANode, Integer> ids = new IdentityHashMap<>();
+		for (int i = 0; i < n; i++) {
+			ids.put(states[i], i);
+		}
+		final int[][] closures = new int[n][];
+		// seen[s] == from + 1 while computing the closure of from
+		final int[] seen = new int[n];
+		final int[] work = new int[n];
+		final int[] result = new int[n];
+		for (int from = 0; from < n; from++) {
+			int top = 0;
+			int count = 0;
+			work[top++] = from;
+			seen[from] = from + 1;
+			while (top > 0) {
+				int s = work[--top];
+				result[count++] = s;
+				if (states[s].label != XI) {
+					continue;
+				}
+				for (NFANode out : states[s].outgoing) {
+					int x = ids.get(out);
+					if (seen[x] != from + 1) {
+						seen[x] = from + 1;
+						work[top++] = x;
+					}
+				}
+			}
+			closures[from] = Arrays.copyOf(result, count);
+			Arrays.sort(closures[from]);
+		}
+		return closures;
+	}
+
+	NFANode start() {
+		return start;
+	}
+
+	NFANode fin() {
+		return fin;
+	}
+
+	Stream<NFANode> nodes() {
+		return nodes.stream();
+	}
+
+	public Alphabet alphabet() {
+		return Alphabet.of(nodes().map(n -> n.label).collect(Collectors.toList()));
+	}
+
 	public Simulation simulate() {
 		return new Simulation();
 	}
 
+	public Finder finder() {
+		return Finder.of(this);
+	}
+
+	public PikeVM vm() {
+		return new PikeVM(new Program(this));
+	}
+
+	public Grep grep() {
+		return grep(Grep.Mode.CONTAINS);
+	}
+
+	public Grep grep(Grep.Mode mode) {
+		return Grep.of(this, mode);
+	}
+
+	public StreamMatcher streaming(StreamMatcher.Listener listener) {
+		return new StreamMatcher(new Program(this), listener);
+	}
+
+	// a pending match is reported once it holds limit chars, see StreamMatcher
+	public StreamMatcher streaming(StreamMatcher.Listener listener, int limit) {
+		return new StreamMatcher(new Program(this), listener, limit);
+	}
+
+	public BitParallel bitParallel() {
+		return new BitParallel(new Program(this));
+	}
+
+	public LazyDfa lazy() {
+		return lazy(LazyDfa.DEFAULT_BUDGET);
+	}
+
+	public LazyDfa lazy(int budget) {
+		return new LazyDfa(new Program(this), budget);
+	}
+
 	public Conversion convert() {
 		return new Conversion();
 	}
@@ -168,95 +402,48 @@ public class NFAGraph {
 		}
 
 		public DFAGraph execute() {
-			Set<NFANode> starts = start.xi().stream().collect(Collectors.toSet());
+			if (nodes().anyMatch(n -> n.label instanceof NFA.Begin || n.label instanceof NFA.End)) {
+				throw new UnsupportedOperationException("DFA not support '^'/'$' yet");
+			}
+			final Alphabet alphabet = alphabet();
+			finish();
 			DFANode s = new DFANode();
 			s.start = true;
-			s.nfas.addAll(starts);
+			s.nfas.addAll(start.xi());
 			nodes.add(s);
-			Set<Label> outputs = outputs(starts);
-			resolve(s, outputs);
-			return new DFAGraph(nodes, edges, s);
+			final Deque<DFANode> pending = new ArrayDeque<>();
+			pending.add(s);
+			while (!pending.isEmpty()) {
+				resolve(pending.poll(), alphabet, pending);
+			}
+			return new DFAGraph(nodes, edges, s, alphabet);
 		}
 
-		private void resolve(DFANode node, Set<Label> labels) {
+		private void resolve(DFANode node, Alphabet alphabet, Deque<DFANode> pending) {
 			node.terminal = node.nfas.stream().anyMatch(nfa -> nfa.label == null);
-			nodes.add(node);
 			final Set<NFANode> nfas = node.nfas;
-			labels.forEach(label -> {
+			for (int cls = 0; cls < alphabet.size(); cls++) {
+				final char c = alphabet.firsts[cls];
 				DFANode out = new DFANode();
-				Set<NFANode> dsts = new HashSet<>();
-				nfas.forEach(nfa -> {
-					if (nfa.label != null && nfa.label.match(label.first())) {
-						dsts.addAll(nfa.move(label.first()).stream().flatMap(n -> n.xi().stream()).collect(Collectors.toSet()));
-					}
-				});
-				out.nfas.addAll(dsts);
-				out = nodes.contains(out) ? nodes.get(out) : out;
-				DFAEdge edge = new DFAEdge(node, out, label);
-				node.addEdge(edge);
-				edges.add(edge);
-				if (!nodes.contains(out)) {
-					resolve(out, outputs(out.nfas));
-				}
-			});
-		}
-
-		private Set<Label> outputs(Set<NFANode> nodes) {
-			Set<Label> laps = nodes.stream().map(n -> n.label).filter(l -> l != XI && l != null).collect(Collectors.toSet());
-			final IntervalTree tree = new IntervalTree(Comparator.naturalOrder());
-			if (laps.isEmpty()) {
-				return Set.of();
-			}
-			laps.forEach(l -> {
-				Interval i = l.interval();
-				char low = (char) i.getLowEndpoint();
-				char high = (char) i.getHighEndpoint();
-				List overlaps = tree.findAllNodesIntersecting(i);
-				Set<Interval> slices = new LinkedHashSet<>();
-				if (overlaps.isEmpty()) {
-					tree.insert(i, null);
-				} else {
-					final int size = overlaps.size();
-					for (int j = 0; j < size; j++) {
-						IntervalNode o = (IntervalNode) overlaps.get(j);
-						tree.deleteNode(o);
-						Interval ol = o.getInterval();
-						char olow = (char) ol.getLowEndpoint();
-						char ohigh = (char) ol.getHighEndpoint();
-						char c1 = olow < low ? olow : low;
-						char c2 = low == c1 ? olow : low;
-						char c3 = ohigh < high ? ohigh : high;
-						char c4 = high == c3 ? ohigh : high;
-						if (slices.isEmpty() && c1 < c2) {
-							slices.add(new Interval(c1, c2));
-						}
-						slices.add(new Interval(c2, c3));
-						if (j + 1 == size && c3 < c4) {
-							slices.add(new Interval(c3, c4));
+				for (NFANode nfa : nfas) {
+					if (nfa.label != null && nfa.label != XI && nfa.label.match(c)) {
+						for (int t : closures[nfa.outgoing.get(0).id]) {
+							out.nfas.add(states[t]);
 						}
 					}
-					slices.forEach(in -> tree.insert(in, null));
 				}
-			});
-			List<Interval> intervals = new ArrayList<>();
-			preorder(tree.getRoot(), intervals);
-			return intervals.stream().map(i ->  {
-				char low = (char) i.getLowEndpoint();
-				char high = (char) i.getHighEndpoint();
-				if (low == high - 1) {
-					return Single.single(low);
+				if (out.nfas.isEmpty()) {
+					continue;
 				}
-				return new Range(low, high);
-			}).collect(Collectors.toSet());
-		}
-
-		private void preorder(RBNode node, List<Interval> ordered) {
-			if (node.getLeft() != null) {
-				preorder(node.getLeft(), ordered);
-			}
-			ordered.add(((IntervalNode)node).getInterval());
-			if (node.getRight() != null) {
-				preorder(node.getRight(), ordered);
+				DFANode to = nodes.get(out);
+				if (to == null) {
+					to = out;
+					nodes.add(to);
+					pending.add(to);
+				}
+				DFAEdge edge = new DFAEdge(node, to, alphabet.label(cls));
+				node.addEdge(edge);
+				edges.add(edge);
 			}
 		}
 
@@ -267,12 +454,15 @@ public class NFAGraph {
 		private Set<NFANode> current;
 
 		private Simulation() {
+			finish();
 			current = Set.of(start);
 		}
 
+		// starts over from the start node, current() is left at where the input ran out
 		public boolean test(final CharSequence cs) {
 			int i = 0;
 			int len = cs.length();
+			current = Set.of(start);
 			Set<NFANode> starts = current.stream()
 					.flatMap(n -> n.move(CHAR_START).stream()).collect(Collectors.toSet());
 			current = Stream.concat(starts.stream(), current.stream()).collect(Collectors.toSet());
@@ -1,9 +1,12 @@
 package com.github.lcybo.regex;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Set;
 
 import static com.github.lcybo.regex.Label.XI;
 
@@ -14,27 +17,57 @@ public class NFANode {
 
 	List<NFANode> outgoing = new ArrayList<>(2);
 
+	// set by NFAGraph.finish() while the graph is unchanged: the id, the ε-closure as ids into states
+	int       id = -1;
+	int[]     closure;
+	NFANode[] states;
+
 	NFANode() {}
 
 	public List<NFANode> move(final char c) {
+		if (label == null) {
+			return List.of();
+		}
 		if (label.match(c)) {
 			return List.of(outgoing.get(0));
 		}
-		return xi().stream().flatMap(x -> {
-			if (x.label == XI || x.label == null || !x.label.match(c)) {
-				return Stream.empty();
+		final List<NFANode> moved = new ArrayList<>();
+		for (NFANode x : xi()) {
+			if (x.label != XI && x.label != null && x.label.match(c)) {
+				moved.add(x.outgoing.get(0));
 			}
-			return Stream.of(x.outgoing.get(0));
-		}).collect(Collectors.toList());
+		}
+		return moved;
 	}
 
 	public List<NFANode> xi() {
 		if (label != XI) {
 			return List.of(this);
 		}
-		List<NFANode> xi = new ArrayList<>();
-		xi.add(this);
-		outgoing.forEach(x -> xi.addAll(x.xi()));
+		if (closure != null) {
+			final List<NFANode> xi = new ArrayList<>(closure.length);
+			for (int t : closure) {
+				xi.add(states[t]);
+			}
+			return xi;
+		}
+		// not finished, walk the ε edges; the seen set cuts the cycles of NFAGraph.closure()
+		final Set<NFANode> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		final List<NFANode> xi = new ArrayList<>();
+		final Deque<NFANode> work = new ArrayDeque<>();
+		work.push(this);
+		seen.add(this);
+		while (!work.isEmpty()) {
+			NFANode node = work.pop();
+			xi.add(node);
+			if (node.label == XI) {
+				for (NFANode out : node.outgoing) {
+					if (seen.add(out)) {
+						work.push(out);
+					}
+				}
+			}
+		}
 		return xi;
 	}
 
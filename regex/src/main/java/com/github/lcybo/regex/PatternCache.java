@@ -0,0 +1,223 @@
+package com.github.lcybo.regex;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/*
+ * Compiled patterns by regex, for callers compiling the same patterns over and over. The keys
+ * are spread over stripes, each an access ordered map under its own lock evicting its least
+ * recently used entry; a stripe only holds its lock to look up or insert, the compilation runs
+ * outside it. Concurrent requests for a new regex share one compilation through the future
+ * stored for it; a failed compilation is not cached, the next request tries again.
+ *
+ * Eviction is plain LRU per stripe, by count, on purpose: the entries are whole compiled
+ * patterns of comparable cost, and a rule engine's working set is stable, so the scan
+ * resistance of a frequency based admission (W-TinyLFU) would buy little for its sketch.
+ *
+ * The compiled values are shared between threads and should be immutable or thread-safe,
+ * e.g. a Finder or a CompiledDfa. Regex.compile goes through a shared instance keyed by the
+ * pattern alone, the syntax has no flags.
+ *
+ * A compiler may call get for other regexes, but not for one its own thread is compiling: that
+ * would wait on itself, so it fails with an IllegalStateException instead. Compilers on several
+ * threads waiting on each other's regexes in a cycle are not detected and deadlock.
+ */
+public class PatternCache<T> {
+
+	static final int DEFAULT_CAPACITY = 1024;
+
+	private final Function<String, ? extends T> compiler;
+	private final List<Stripe<T>>               stripes;
+	private final int                           mask;
+
+	private final AtomicLong hits      = new AtomicLong();
+	private final AtomicLong misses    = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public PatternCache(Function<String, ? extends T> compiler) {
+		this(compiler, DEFAULT_CAPACITY);
+	}
+
+	public PatternCache(Function<String, ? extends T> compiler, int capacity) {
+		this(compiler, capacity, Runtime.getRuntime().availableProcessors());
+	}
+
+	// capacity is spread over the stripes, rounded up
+	PatternCache(Function<String, ? extends T> compiler, int capacity, int concurrency) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity too small: " + capacity);
+		}
+		this.compiler = Objects.requireNonNull(compiler);
+		// a power of two covering the concurrency, at most one stripe per entry
+		int n = 1;
+		while (n < concurrency && n * 2 <= capacity) {
+			n *= 2;
+		}
+		final List<Stripe<T>> stripes = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			stripes.add(new Stripe<>((capacity + n - 1) / n));
+		}
+		this.stripes = stripes;
+		this.mask = n - 1;
+	}
+
+	public T get(String regex) {
+		final Stripe<T> stripe = stripe(regex);
+		Compilation<T> future;
+		boolean owner = false;
+		synchronized (stripe) {
+			future = stripe.get(regex);
+			if (future == null) {
+				future = new Compilation<>();
+				if (stripe.put(regex, future)) {
+					evictions.incrementAndGet();
+				}
+				owner = true;
+			}
+		}
+		if (!owner) {
+			if (future.thread == Thread.currentThread()) {
+				throw new IllegalStateException("Recursive compilation of '" + regex + "'");
+			}
+			hits.incrementAndGet();
+			return join(future);
+		}
+		misses.incrementAndGet();
+		try {
+			future.complete(compiler.apply(regex));
+		} catch (RuntimeException | Error e) {
+			synchronized (stripe) {
+				stripe.remove(regex, future);
+			}
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			future.thread = null;
+		}
+		return future.join();
+	}
+
+	// drops the regex, a compilation in flight still completes for its waiters
+	public void invalidate(String regex) {
+		final Stripe<T> stripe = stripe(regex);
+		synchronized (stripe) {
+			stripe.remove(regex);
+		}
+	}
+
+	public void clear() {
+		for (Stripe<T> stripe : stripes) {
+			synchronized (stripe) {
+				stripe.clear();
+			}
+		}
+	}
+
+	public int size() {
+		int size = 0;
+		for (Stripe<T> stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	public long hits() {
+		return hits.get();
+	}
+
+	public long misses() {
+		return misses.get();
+	}
+
+	public long evictions() {
+		return evictions.get();
+	}
+
+	@Override
+	public String toString() {
+		return "PatternCache[size " + size() + ", hits " + hits() + ", misses " + misses()
+				+ ", evictions " + evictions() + "]";
+	}
+
+	private Stripe<T> stripe(String regex) {
+		int h = regex.hashCode();
+		return stripes.get((h ^ (h >>> 16)) & mask);
+	}
+
+	// rethrows what the compilation threw
+	private static <T> T join(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw e;
+		}
+	}
+
+	// the future of a compilation, with the thread running it until it completes
+	private static final class Compilation<T> extends CompletableFuture<T> {
+
+		volatile Thread thread = Thread.currentThread();
+
+	}
+
+	// an access ordered map evicting its eldest entry beyond capacity, guarded by its own lock
+	private static final class Stripe<T> {
+
+		private final LinkedHashMap<String, Compilation<T>> map = new LinkedHashMap<>(16, 0.75f, true);
+		private final int                                   capacity;
+
+		Stripe(int capacity) {
+			this.capacity = capacity;
+		}
+
+		Compilation<T> get(String regex) {
+			return map.get(regex);
+		}
+
+		// whether the eldest entry was evicted
+		boolean put(String regex, Compilation<T> future) {
+			map.put(regex, future);
+			if (map.size() <= capacity) {
+				return false;
+			}
+			Iterator<Compilation<T>> eldest = map.values().iterator();
+			eldest.next();
+			eldest.remove();
+			return true;
+		}
+
+		void remove(String regex) {
+			map.remove(regex);
+		}
+
+		void remove(String regex, Compilation<T> future) {
+			map.remove(regex, future);
+		}
+
+		void clear() {
+			map.clear();
+		}
+
+		int size() {
+			return map.size();
+		}
+
+	}
+
+}
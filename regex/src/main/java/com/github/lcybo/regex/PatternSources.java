@@ -0,0 +1,169 @@
+package com.github.lcybo.regex;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.lang.model.SourceVersion;
+
+/*
+ * Build time compilation of fixed patterns into Java sources. A patterns file holds one
+ * `name = regex` per line, the regex taken verbatim after the '=' and its leading blanks; '#'
+ * starts a comment line. The file a/b/Names.patterns under the input directory becomes class
+ * a.b.Names, with static methods name(CharSequence) and name(byte[], int, int) matching whole
+ * inputs as Dfa.matches does, bad byte ranges included, each DFA minimized and turned into a
+ * switch over its states.
+ *
+ * Usage: PatternSources <input directory> <output directory>, see the generatePatterns task.
+ */
+public final class PatternSources {
+
+	static final String EXTENSION = ".patterns";
+
+	private PatternSources() {}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: PatternSources <input directory> <output directory>");
+			System.exit(1);
+		}
+		final Path input = Paths.get(args[0]);
+		final Path output = Paths.get(args[1]);
+		if (!Files.isDirectory(input)) {
+			return;
+		}
+		final List<Path> files;
+		try (Stream<Path> walk = Files.walk(input)) {
+			files = walk.filter(p -> p.toString().endsWith(EXTENSION)).sorted().collect(Collectors.toList());
+		}
+		for (Path file : files) {
+			Path relative = input.relativize(file);
+			String name = relative.getFileName().toString();
+			String type = name.substring(0, name.length() - EXTENSION.length());
+			String pkg = relative.getParent() == null ? "" : relative.getParent().toString().replace(relative.getFileSystem().getSeparator(), ".");
+			String source = generate(pkg, type, parse(Files.readAllLines(file, StandardCharsets.UTF_8), name));
+			Path target = output.resolve(relative.resolveSibling(type + ".java").toString());
+			Files.createDirectories(target.getParent());
+			Files.write(target, source.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+
+	// name -> regex, in file order
+	static Map<String, String> parse(List<String> lines, String file) {
+		final Map<String, String> patterns = new LinkedHashMap<>();
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+			String trimmed = line.trim();
+			if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+				continue;
+			}
+			int eq = line.indexOf('=');
+			String name = eq < 0 ? "" : line.substring(0, eq).trim();
+			if (!SourceVersion.isIdentifier(name) || SourceVersion.isKeyword(name)) {
+				throw new IllegalStateException(file + ":" + (i + 1) + ": expected 'name = regex'");
+			}
+			if (patterns.put(name, line.substring(eq + 1).replaceFirst("^[ \t]+", "")) != null) {
+				throw new IllegalStateException(file + ":" + (i + 1) + ": duplicate pattern '" + name + "'");
+			}
+		}
+		return patterns;
+	}
+
+	static String generate(String pkg, String type, Map<String, String> patterns) {
+		final StringBuilder out = new StringBuilder();
+		if (!pkg.isEmpty()) {
+			out.append("package ").append(pkg).append(";\n\n");
+		}
+		out.append("// generated by ").append(PatternSources.class.getName()).append(", do not edit\n");
+		out.append("public final class ").append(type).append(" {\n\n");
+		out.append("\tprivate ").append(type).append("() {}\n");
+		patterns.forEach((name, regex) -> {
+			final Dfa dfa;
+			try {
+				dfa = new NFA(regex).getGraph().convert().execute().minimize().compile();
+			} catch (RuntimeException e) {
+				throw new IllegalStateException("Pattern '" + name + "': " + e.getMessage(), e);
+			}
+			method(out, name, regex, dfa, "CharSequence cs", "cs.length()", "cs.charAt(i)", "char");
+			method(out, name, regex, dfa, "byte[] bytes, int offset, int length", "offset + length", "bytes[i] & 0xff", "int");
+		});
+		out.append("\n}\n");
+		return out.toString();
+	}
+
+	private static void method(StringBuilder out, String name, String regex, Dfa dfa,
+							   String params, String end, String read, String type) {
+		final boolean bytes = type.equals("int");
+		out.append("\n\t// ").append(quote(regex)).append('\n');
+		out.append("\tpublic static boolean ").append(name).append('(').append(params).append(") {\n");
+		if (bytes) {
+			// a bad range throws as in Dfa.matches
+			out.append("\t\tjava.util.Objects.checkFromIndexSize(offset, length, bytes.length);\n");
+		}
+		out.append("\t\tint s = ").append(dfa.startText >>> dfa.shift).append(";\n");
+		out.append("\t\tfor (int i = ").append(bytes ? "offset" : "0").append(", end = ").append(end).append("; i < end; i++) {\n");
+		out.append("\t\t\t").append(type).append(" c = ").append(read).append(";\n");
+		out.append("\t\t\tswitch (s) {\n");
+		for (int q = 1; q < dfa.states(); q++) {
+			final int[] ranges = dfa.ranges(q << dfa.shift);
+			if (ranges.length == 0) {
+				continue;
+			}
+			out.append("\t\t\tcase ").append(q).append(":\n");
+			for (int r = 0; r < ranges.length; r += 3) {
+				int lo = ranges[r];
+				int hi = ranges[r + 1];
+				out.append("\t\t\t\tif (");
+				if (lo == hi) {
+					out.append("c == ").append(literal(lo));
+				} else if (lo == 0) {
+					out.append("c <= ").append(literal(hi));
+				} else {
+					out.append("c >= ").append(literal(lo)).append(" && c <= ").append(literal(hi));
+				}
+				out.append(") {\n\t\t\t\t\ts = ").append(ranges[r + 2] >>> dfa.shift).append(";\n\t\t\t\t\tcontinue;\n\t\t\t\t}\n");
+			}
+			out.append("\t\t\t\treturn false;\n");
+		}
+		out.append("\t\t\tdefault:\n\t\t\t\treturn false;\n\t\t\t}\n\t\t}\n");
+		final List<String> eois = new ArrayList<>();
+		for (int q = 1; q < dfa.states(); q++) {
+			if (dfa.eoi(q << dfa.shift)) {
+				eois.add("s == " + q);
+			}
+		}
+		out.append("\t\treturn ").append(eois.isEmpty() ? "false" : String.join(" || ", eois)).append(";\n");
+		out.append("\t}\n");
+	}
+
+	private static String literal(int c) {
+		if (c == '\'' || c == '\\') {
+			return "'\\" + (char) c + "'";
+		}
+		return c >= ' ' && c < 0x7f ? "'" + (char) c + "'" : String.valueOf(c);
+	}
+
+	// as a string literal, no unicode escape or line break can reach the comment
+	private static String quote(String s) {
+		final StringBuilder sb = new StringBuilder("\"");
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < ' ' || c >= 0x7f) {
+				sb.append(String.format("\\\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+
+}
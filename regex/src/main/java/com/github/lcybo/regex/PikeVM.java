@@ -0,0 +1,164 @@
+package com.github.lcybo.regex;
+
+import static com.github.lcybo.regex.NFA.CHAR_ASCII_END;
+
+/*
+ * NFA simulation over numbered states: thread lists are sparse sets allocated once, ε-closures
+ * are precomputed by Program, so a step is allocation free and O(states).
+ * Not thread-safe, every thread needs its own instance.
+ */
+public class PikeVM implements Searcher {
+
+	final Program program;
+
+	private final byte[]    classes;
+	private final int       width;
+	// hits[s * width + cls], whether state s consumes chars of class cls
+	private final boolean[] hits;
+
+	private SparseSet current;
+	private SparseSet next;
+
+	// start offset of the thread in every state, only maintained by find
+	private int[] origins;
+	private int[] follows;
+
+	PikeVM(Program program) {
+		this.program = program;
+		this.classes = program.alphabet.classes;
+		this.width = program.alphabet.size();
+		final int n = program.size();
+		this.hits = new boolean[n * width];
+		for (int s = 0; s < n; s++) {
+			for (int cls = 0; cls < width; cls++) {
+				hits[s * width + cls] = program.matches(s, cls);
+			}
+		}
+		this.current = new SparseSet(n);
+		this.next = new SparseSet(n);
+		this.origins = new int[n];
+		this.follows = new int[n];
+	}
+
+	public boolean test(final CharSequence cs) {
+		return test(program.startText, cs, 0);
+	}
+
+	// runs from an arbitrary set of states, e.g. where a lazy DFA gave up
+	boolean test(int[] from, final CharSequence cs, int offset) {
+		SparseSet current = this.current;
+		current.clear();
+		for (int s : from) {
+			current.add(s);
+		}
+		for (int i = offset, len = cs.length(); i < len; i++) {
+			char c = cs.charAt(i);
+			if (c >= CHAR_ASCII_END || current.isEmpty()) {
+				return false;
+			}
+			step(classes[c]);
+			current = this.current;
+		}
+		return accept();
+	}
+
+	private void step(int cls) {
+		final SparseSet current = this.current;
+		final SparseSet next = this.next;
+		final int[] dense = current.dense;
+		final int[] targets = program.next;
+		final int[][] closures = program.closures;
+		next.clear();
+		for (int j = 0, size = current.size; j < size; j++) {
+			int s = dense[j];
+			if (hits[s * width + cls]) {
+				for (int t : closures[targets[s]]) {
+					next.add(t);
+				}
+			}
+		}
+		this.current = next;
+		this.next = current;
+	}
+
+	/*
+	 * Leftmost-longest match starting at or after from, null if none. A new thread is started
+	 * at every offset behind the running ones until something matched, so the thread list stays
+	 * ordered by start; once a match is seen, threads started later than it are dropped.
+	 */
+	@Override
+	public Match find(final CharSequence cs, int from) {
+		final int len = cs.length();
+		if (from < 0 || from > len) {
+			throw new IndexOutOfBoundsException("from: " + from + ", length: " + len);
+		}
+		final int[] targets = program.next;
+		final int[][] closures = program.closures;
+		this.current.clear();
+		int start = -1;
+		int end = -1;
+		for (int i = from; ; i++) {
+			SparseSet current = this.current;
+			if (start < 0) {
+				for (int s : i == 0 ? program.startText : program.start) {
+					if (current.add(s)) {
+						origins[s] = i;
+					}
+				}
+			}
+			final boolean eoi = i == len;
+			for (int j = 0; j < current.size; j++) {
+				int s = current.dense[j];
+				if (eoi ? program.eoi[s] : program.terminal[s]) {
+					// the first accepting thread has the leftmost start
+					if (start < 0 || origins[s] <= start) {
+						start = origins[s];
+						end = i;
+					}
+					break;
+				}
+			}
+			if (eoi || (start >= 0 && current.isEmpty())) {
+				break;
+			}
+			char c = cs.charAt(i);
+			final SparseSet next = this.next;
+			next.clear();
+			if (c < CHAR_ASCII_END) {
+				final int cls = classes[c];
+				for (int j = 0, size = current.size; j < size; j++) {
+					int s = current.dense[j];
+					int origin = origins[s];
+					if (start >= 0 && origin > start || !hits[s * width + cls]) {
+						continue;
+					}
+					for (int t : closures[targets[s]]) {
+						if (next.add(t)) {
+							follows[t] = origin;
+						}
+					}
+				}
+			}
+			this.current = next;
+			this.next = current;
+			int[] swap = origins;
+			origins = follows;
+			follows = swap;
+			if (start >= 0 && next.isEmpty()) {
+				break;
+			}
+		}
+		return start < 0 ? null : new Match(start, end);
+	}
+
+	private boolean accept() {
+		final SparseSet current = this.current;
+		for (int j = 0; j < current.size; j++) {
+			if (program.eoi[current.dense[j]]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
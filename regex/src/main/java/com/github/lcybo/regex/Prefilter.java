@@ -0,0 +1,238 @@
+package com.github.lcybo.regex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.lcybo.regex.NFA.CHAR_ASCII_END;
+
+/*
+ * Cheap scan for the positions a match may start at, verified by an automaton afterwards.
+ * Factor scans return where a required literal occurs instead, the caller knows how far
+ * before it the match may start.
+ */
+interface Prefilter {
+
+	// first candidate start at or after from, -1 if none
+	int next(CharSequence cs, int from);
+
+	// null if there is nothing to scan for
+	static Prefilter of(List<String> prefixes) {
+		if (prefixes.isEmpty()) {
+			return null;
+		}
+		return prefixes.size() == 1 ? new Prefix(prefixes.get(0)) : new AhoCorasick(prefixes);
+	}
+
+	final class Prefix implements Prefilter {
+
+		final String literal;
+		private final byte[] bytes;
+
+		Prefix(String literal) {
+			this.literal = literal;
+			this.bytes = literal.getBytes(StandardCharsets.US_ASCII);
+		}
+
+		@Override
+		public int next(CharSequence cs, int from) {
+			if (cs instanceof String) {
+				return ((String) cs).indexOf(literal, from);
+			}
+			if (cs instanceof Bytes) {
+				return ((Bytes) cs).indexOf(bytes, from);
+			}
+			final char first = literal.charAt(0);
+			final int last = cs.length() - literal.length();
+			for (int i = from; i <= last; i++) {
+				if (cs.charAt(i) != first) {
+					continue;
+				}
+				int j = 1;
+				while (j < literal.length() && cs.charAt(i + j) == literal.charAt(j)) {
+					j++;
+				}
+				if (j == literal.length()) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		@Override
+		public String toString() {
+			return "prefix \"" + literal + "\"";
+		}
+
+	}
+
+	/*
+	 * Boyer-Moore-Horspool: compare the last char of the window first and shift by the
+	 * distance of its last occurrence in the literal.
+	 */
+	final class Horspool implements Prefilter {
+
+		final String literal;
+
+		private final int[] shifts = new int[CHAR_ASCII_END];
+
+		Horspool(String literal) {
+			this.literal = literal;
+			final int m = literal.length();
+			Arrays.fill(shifts, m);
+			for (int i = 0; i < m - 1; i++) {
+				char c = literal.charAt(i);
+				if (c < CHAR_ASCII_END) {
+					shifts[c] = m - 1 - i;
+				}
+			}
+		}
+
+		@Override
+		public int next(CharSequence cs, int from) {
+			final int m = literal.length();
+			final char last = literal.charAt(m - 1);
+			final int[] shifts = this.shifts;
+			for (int i = from + m - 1, len = cs.length(); i < len; ) {
+				char c = cs.charAt(i);
+				if (c == last) {
+					int j = m - 2;
+					while (j >= 0 && cs.charAt(i - m + 1 + j) == literal.charAt(j)) {
+						j--;
+					}
+					if (j < 0) {
+						return i - m + 1;
+					}
+				}
+				i += c < CHAR_ASCII_END ? shifts[c] : m;
+			}
+			return -1;
+		}
+
+		@Override
+		public String toString() {
+			return "factor \"" + literal + "\"";
+		}
+
+	}
+
+	/*
+	 * Aho-Corasick over a set of literals, the goto function completed into a DFA over ASCII.
+	 * Every state knows the longest literal ending there, so the earliest start of the hits
+	 * ending at a position is known; the scan goes on as long as a longer literal ending
+	 * later could still start before the best one found.
+	 */
+	final class AhoCorasick implements Prefilter {
+
+		final List<String> literals;
+
+		// delta[state * CHAR_ASCII_END + c]
+		private final int[] delta;
+		// longest literal ending in the state, 0 if none
+		private final int[] longest;
+		private final int   max;
+		// chars that leave the root, everything else is skipped while in it
+		private final boolean[] firsts = new boolean[CHAR_ASCII_END];
+
+		AhoCorasick(List<String> literals) {
+			this.literals = literals;
+			int size = 1;
+			for (String literal : literals) {
+				size += literal.length();
+			}
+			int[] trie = new int[size * CHAR_ASCII_END];
+			int[] depth = new int[size];
+			int[] longest = new int[size];
+			int states = 1;
+			int max = 0;
+			for (String literal : literals) {
+				int s = 0;
+				for (int i = 0; i < literal.length(); i++) {
+					int at = s * CHAR_ASCII_END + literal.charAt(i);
+					if (trie[at] == 0) {
+						depth[states] = depth[s] + 1;
+						trie[at] = states++;
+					}
+					s = trie[at];
+				}
+				longest[s] = literal.length();
+				firsts[literal.charAt(0)] = true;
+				max = Math.max(max, literal.length());
+			}
+			// breadth first, a missing edge goes where the failure state goes
+			final int[] fail = new int[states];
+			final int[] queue = new int[states];
+			int head = 0;
+			int tail = 0;
+			for (int c = 0; c < CHAR_ASCII_END; c++) {
+				if (trie[c] != 0) {
+					queue[tail++] = trie[c];
+				}
+			}
+			while (head < tail) {
+				int s = queue[head++];
+				longest[s] = Math.max(longest[s], longest[fail[s]]);
+				for (int c = 0; c < CHAR_ASCII_END; c++) {
+					int at = s * CHAR_ASCII_END + c;
+					int t = trie[at];
+					if (t != 0) {
+						fail[t] = trie[fail[s] * CHAR_ASCII_END + c];
+						queue[tail++] = t;
+					} else {
+						trie[at] = trie[fail[s] * CHAR_ASCII_END + c];
+					}
+				}
+			}
+			this.delta = Arrays.copyOf(trie, states * CHAR_ASCII_END);
+			this.longest = Arrays.copyOf(longest, states);
+			this.max = max;
+		}
+
+		@Override
+		public int next(CharSequence cs, int from) {
+			final int[] delta = this.delta;
+			final int[] longest = this.longest;
+			final boolean[] firsts = this.firsts;
+			final int len = cs.length();
+			int best = -1;
+			int s = 0;
+			for (int i = from; i < len; i++) {
+				if (best >= 0 && i >= best + max) {
+					break;
+				}
+				if (s == 0 && best >= 0) {
+					// nothing pending, any later hit starts after this one
+					return best;
+				}
+				char c = cs.charAt(i);
+				if (s == 0) {
+					while (c >= CHAR_ASCII_END || !firsts[c]) {
+						if (++i == len) {
+							return best;
+						}
+						c = cs.charAt(i);
+					}
+				}
+				if (c >= CHAR_ASCII_END) {
+					s = 0;
+					continue;
+				}
+				s = delta[s * CHAR_ASCII_END + c];
+				if (longest[s] > 0) {
+					int start = i - longest[s] + 1;
+					if (best < 0 || start < best) {
+						best = start;
+					}
+				}
+			}
+			return best;
+		}
+
+		@Override
+		public String toString() {
+			return "prefixes " + literals;
+		}
+
+	}
+
+}
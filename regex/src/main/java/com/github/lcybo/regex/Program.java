@@ -0,0 +1,206 @@
+package com.github.lcybo.regex;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.github.lcybo.regex.Label.XI;
+
+/*
+ * NFAGraph flattened into numbered states. Closures only keep the states that matter to a
+ * set of threads: char consuming states, anchors and the terminal; ε states are dropped.
+ * Several graphs are flattened together under one ε entry, each terminal knowing its pattern.
+ */
+final class Program {
+
+	static final int NONE = -1;
+
+	final Label[] labels;
+
+	// successor over the (single) non-ε edge, NONE for ε and terminal states
+	final int[] next;
+
+	// ε-closure of every state, sorted
+	final int[][] closures;
+
+	final boolean[] terminal;
+
+	// pattern of every terminal state, NONE elsewhere
+	final int[] patterns;
+
+	// terminal is reachable through ε and '$' edges, i.e. the state accepts at end of input
+	final boolean[] eoi;
+
+	final Alphabet alphabet;
+
+	// start closure when not at the beginning of input, and at the beginning ('^' edges followed)
+	final int[] start;
+	final int[] startText;
+
+	final boolean anchored;
+
+	Program(NFAGraph graph) {
+		this(List.of(graph));
+	}
+
+	Program(List<NFAGraph> graphs) {
+		final Map<NFANode, Integer> fins = new IdentityHashMap<>();
+		NFANode entry;
+		if (graphs.size() == 1) {
+			entry = entry(graphs.get(0), 0, fins);
+		} else {
+			// one ε edge per graph, more than NFANode.route allows
+			entry = new NFANode();
+			entry.label = XI;
+			for (int i = 0; i < graphs.size(); i++) {
+				entry.outgoing.add(entry(graphs.get(i), i, fins));
+			}
+		}
+		// a lone graph has its numbering and closures computed already, in the same order
+		final boolean whole = graphs.size() == 1 && graphs.get(0).start() != null;
+		final NFANode[] nodes = whole ? graphs.get(0).states() : NFAGraph.number(entry);
+		final int[][] full = whole ? graphs.get(0).closures() : NFAGraph.closures(nodes);
+		final Map<NFANode, Integer> ids = new IdentityHashMap<>();
+		for (int i = 0; i < nodes.length; i++) {
+			ids.put(nodes[i], i);
+		}
+		final int n = nodes.length;
+		labels = new Label[n];
+		next = new int[n];
+		terminal = new boolean[n];
+		patterns = new int[n];
+		boolean anchors = false;
+		for (int i = 0; i < n; i++) {
+			NFANode node = nodes[i];
+			labels[i] = node.label;
+			terminal[i] = node.label == null;
+			patterns[i] = terminal[i] ? fins.getOrDefault(node, NONE) : NONE;
+			next[i] = node.label == null || node.label == XI ? NONE : ids.get(node.outgoing.get(0));
+			anchors |= node.label instanceof NFA.Begin || node.label instanceof NFA.End;
+		}
+		anchored = anchors;
+		// the ε states are dropped, the order stays sorted
+		closures = new int[n][];
+		for (int i = 0; i < n; i++) {
+			int count = 0;
+			for (int t : full[i]) {
+				if (labels[t] != XI) count++;
+			}
+			closures[i] = new int[count];
+			int j = 0;
+			for (int t : full[i]) {
+				if (labels[t] != XI) closures[i][j++] = t;
+			}
+		}
+		eoi = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			eoi[i] = reaches(i, NFA.End.class);
+		}
+		alphabet = Alphabet.of(Arrays.asList(labels));
+		start = closures[0];
+		startText = follow(start, NFA.Begin.class);
+	}
+
+	private static NFANode entry(NFAGraph graph, int pattern, Map<NFANode, Integer> fins) {
+		if (graph.start() == null) {
+			// empty regex, matches the empty string only
+			NFANode empty = new NFANode();
+			fins.put(empty, pattern);
+			return empty;
+		}
+		fins.put(graph.fin(), pattern);
+		return graph.start();
+	}
+
+	// whether the terminal is reachable from s through ε and anchor edges of the given kind
+	private boolean reaches(int s, Class<? extends Label> anchor) {
+		for (int t : follow(closures[s], anchor)) {
+			if (terminal[t]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// set extended with everything reachable through anchor edges of the given kind, sorted
+	int[] follow(int[] set, Class<? extends Label> anchor) {
+		final boolean[] in = new boolean[labels.length];
+		final int[] work = new int[labels.length];
+		int top = 0;
+		for (int s : set) {
+			in[s] = true;
+			work[top++] = s;
+		}
+		boolean grown = false;
+		while (top > 0) {
+			int s = work[--top];
+			if (anchor.isInstance(labels[s])) {
+				for (int t : closures[next[s]]) {
+					if (!in[t]) {
+						in[t] = true;
+						grown = true;
+						work[top++] = t;
+					}
+				}
+			}
+		}
+		return grown ? members(in) : set;
+	}
+
+	boolean matches(int s, int cls) {
+		Label label = labels[s];
+		return label != null && label != XI && !(label instanceof NFA.Begin) && !(label instanceof NFA.End)
+				&& label.match(alphabet.firsts[cls]);
+	}
+
+	// sorted closure of the states reached from set on any char of the class
+	int[] step(int[] set, int cls) {
+		final boolean[] in = new boolean[labels.length];
+		boolean any = false;
+		for (int s : set) {
+			if (matches(s, cls)) {
+				for (int t : closures[next[s]]) {
+					in[t] = true;
+				}
+				any = true;
+			}
+		}
+		return any ? members(in) : new int[0];
+	}
+
+	boolean terminal(int[] set) {
+		for (int s : set) {
+			if (terminal[s]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	boolean eoi(int[] set) {
+		for (int s : set) {
+			if (eoi[s]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	int size() {
+		return labels.length;
+	}
+
+	private static int[] members(boolean[] in) {
+		int count = 0;
+		for (boolean b : in) {
+			if (b) count++;
+		}
+		int[] members = new int[count];
+		for (int i = 0, j = 0; i < in.length; i++) {
+			if (in[i]) members[j++] = i;
+		}
+		return members;
+	}
+
+}
@@ -0,0 +1,178 @@
+package com.github.lcybo.regex;
+
+/*
+ * A compiled regex, immutable and safe to share between threads: the DFAs of a Finder for
+ * searching and the anchored DFA for whole input matches, all built once. The per-input state
+ * lives in Matchers, which are cheap and reusable through reset(), so a thread can match any
+ * number of inputs with one Matcher and no allocation per match.
+ *
+ * compile() goes through a process-wide PatternCache, so a pattern compiled before, by any
+ * thread, is returned as it is; see cache() for its counters and invalidation.
+ *
+ * A pattern too large for a DFA still compiles: whole input matches run on a lazy DFA, and
+ * the Finder falls back to a Pike VM (see Finder), which allocates per find.
+ */
+public final class Regex {
+
+	private static final PatternCache<Regex> CACHE = new PatternCache<>(Regex::new);
+
+	private final String  regex;
+	private final Finder  finder;
+	// one of the two is set
+	final Dfa     whole;
+	final LazyDfa lazy;
+
+	private Regex(String regex) {
+		this.regex = regex;
+		final NFAGraph graph = new NFA(regex).getGraph();
+		final Program program = new Program(graph);
+		this.finder = Finder.of(graph, program);
+		// the Finder's anchored DFA if it built one; past its fallback a second subset
+		// construction would most likely run to the limit again
+		Dfa whole = finder.anchored;
+		if (whole == null && finder.vm == null) {
+			try {
+				whole = Determinizer.anchored(program);
+			} catch (Determinizer.TooLarge e) {
+				whole = null;
+			}
+		}
+		this.whole = whole;
+		this.lazy = whole == null ? new LazyDfa(program, LazyDfa.DEFAULT_BUDGET) : null;
+	}
+
+	public static Regex compile(String regex) {
+		return CACHE.get(regex);
+	}
+
+	// the cache behind compile()
+	public static PatternCache<Regex> cache() {
+		return CACHE;
+	}
+
+	// whether the whole input matches, bytes from 0x80 up never do
+	public boolean matches(CharSequence cs) {
+		return whole != null ? whole.matches(cs) : lazy.matches(cs);
+	}
+
+	public Matcher matcher() {
+		return new Matcher(this, "");
+	}
+
+	public Matcher matcher(CharSequence cs) {
+		return new Matcher(this, cs);
+	}
+
+	public Finder finder() {
+		return finder;
+	}
+
+	public String pattern() {
+		return regex;
+	}
+
+	@Override
+	public String toString() {
+		return regex;
+	}
+
+	/*
+	 * Matching state over one input at a time, as java.util.regex.Matcher: find() walks the
+	 * leftmost-longest matches, each search resuming where the previous match ended (one char
+	 * further after an empty match). Not thread-safe.
+	 */
+	public static final class Matcher {
+
+		private final Regex        regex;
+		private       CharSequence cs;
+
+		// where the next find starts, past the end once the input is exhausted
+		private int from;
+		// the last match, start -1 if none
+		private int start = -1;
+		private int end   = -1;
+
+		private Matcher(Regex regex, CharSequence cs) {
+			this.regex = regex;
+			reset(cs);
+		}
+
+		public Matcher reset(CharSequence cs) {
+			this.cs = cs;
+			return reset();
+		}
+
+		public Matcher reset() {
+			from = 0;
+			start = -1;
+			end = -1;
+			return this;
+		}
+
+		public boolean matches() {
+			if (regex.matches(cs)) {
+				start = 0;
+				end = cs.length();
+				from = end == 0 ? 1 : end;
+				return true;
+			}
+			start = -1;
+			return false;
+		}
+
+		public boolean find() {
+			if (from > cs.length()) {
+				start = -1;
+				return false;
+			}
+			final long found = regex.finder.search(cs, from);
+			if (found == Finder.NONE) {
+				from = cs.length() + 1;
+				start = -1;
+				return false;
+			}
+			start = Finder.startOf(found);
+			end = Finder.endOf(found);
+			from = end == start ? end + 1 : end;
+			return true;
+		}
+
+		// resets, then finds the first match starting at or after from
+		public boolean find(int from) {
+			if (from < 0 || from > cs.length()) {
+				throw new IndexOutOfBoundsException("from: " + from + ", length: " + cs.length());
+			}
+			reset();
+			this.from = from;
+			return find();
+		}
+
+		public int start() {
+			check();
+			return start;
+		}
+
+		public int end() {
+			check();
+			return end;
+		}
+
+		// the matched chars, the only call here that allocates
+		public String group() {
+			check();
+			return cs.subSequence(start, end).toString();
+		}
+
+		public Regex regex() {
+			return regex;
+		}
+
+		private void check() {
+			if (start < 0) {
+				throw new IllegalStateException("No match available");
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,268 @@
+package com.github.lcybo.regex;
+
+import org.jctools.maps.NonBlockingHashMap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static com.github.lcybo.regex.NFA.CHAR_ASCII_END;
+
+/*
+ * Many patterns matched in one pass. The graphs are flattened into one Program, each keeping
+ * its own terminal, and every state of a lazily built DFA carries the ids of the patterns
+ * accepting in it. Whole input matching (as Simulation.test) and matching anywhere in the
+ * input run on separate caches, the latter restarting every pattern at every position.
+ */
+public class RegexSet {
+
+	static final int DEFAULT_BUDGET = 10_000;
+
+	private static final int[] NONE = new int[0];
+
+	private final Program program;
+	private final byte[]  classes;
+	private final int     size;
+	private final int     budget;
+
+	private final Mode whole;
+	private final Mode anywhere;
+
+	private final AtomicLong flushes = new AtomicLong();
+
+	public RegexSet(String... patterns) {
+		this(Arrays.asList(patterns));
+	}
+
+	public RegexSet(List<String> patterns) {
+		this(patterns, DEFAULT_BUDGET);
+	}
+
+	public RegexSet(List<String> patterns, int budget) {
+		if (budget < 2) {
+			throw new IllegalArgumentException("Budget too small: " + budget);
+		}
+		this.program = new Program(patterns.stream().map(p -> new NFA(p).getGraph()).collect(Collectors.toList()));
+		this.classes = program.alphabet.classes;
+		this.size = patterns.size();
+		this.budget = budget;
+		this.whole = new Mode(false);
+		this.anywhere = new Mode(true);
+	}
+
+	// ids of the patterns matching the whole input, ascending
+	public int[] matches(final CharSequence cs) {
+		final Mode mode = whole;
+		State s = mode.cache.startText;
+		for (int i = 0, len = cs.length(); i < len; i++) {
+			char c = cs.charAt(i);
+			if (c >= CHAR_ASCII_END) {
+				return NONE;
+			}
+			s = mode.next(s, classes[c]);
+			if (s.nfas.length == 0) {
+				return NONE;
+			}
+		}
+		return s.eois.clone();
+	}
+
+	// ids of the patterns matching somewhere in the input, ascending
+	public int[] search(final CharSequence cs) {
+		final Mode mode = anywhere;
+		final long[] found = new long[(size + 63) >>> 6];
+		State s = mode.cache.startText;
+		for (int i = 0, len = cs.length(); i < len; i++) {
+			add(found, s.accepts);
+			char c = cs.charAt(i);
+			if (c >= CHAR_ASCII_END) {
+				// kills every thread, patterns restart behind it
+				s = mode.cache.start;
+				continue;
+			}
+			s = mode.next(s, classes[c]);
+		}
+		add(found, s.eois);
+		return ids(found);
+	}
+
+	/*
+	 * First match wins: the pattern of the match ending first, the lowest id on a tie, -1 if
+	 * none. Stops scanning at that end.
+	 */
+	public int first(final CharSequence cs) {
+		final Mode mode = anywhere;
+		State s = mode.cache.startText;
+		for (int i = 0, len = cs.length(); i < len; i++) {
+			if (s.accepts.length > 0) {
+				return s.accepts[0];
+			}
+			char c = cs.charAt(i);
+			if (c >= CHAR_ASCII_END) {
+				s = mode.cache.start;
+				continue;
+			}
+			s = mode.next(s, classes[c]);
+		}
+		return s.eois.length > 0 ? s.eois[0] : -1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int states() {
+		return whole.cache.size.get() + anywhere.cache.size.get();
+	}
+
+	public long flushes() {
+		return flushes.get();
+	}
+
+	private static void add(long[] found, int[] ids) {
+		for (int id : ids) {
+			found[id >>> 6] |= 1L << id;
+		}
+	}
+
+	private static int[] ids(long[] bits) {
+		int count = 0;
+		for (long w : bits) {
+			count += Long.bitCount(w);
+		}
+		final int[] ids = new int[count];
+		for (int w = 0, j = 0; w < bits.length; w++) {
+			for (long b = bits[w]; b != 0; b &= b - 1) {
+				ids[j++] = (w << 6) + Long.numberOfTrailingZeros(b);
+			}
+		}
+		return ids;
+	}
+
+	// patterns of the terminals in the set
+	private int[] patterns(int[] set) {
+		int count = 0;
+		for (int s : set) {
+			if (program.terminal[s] && program.patterns[s] != Program.NONE) count++;
+		}
+		if (count == 0) {
+			return NONE;
+		}
+		final int[] ids = new int[count];
+		for (int s : set) {
+			if (program.terminal[s] && program.patterns[s] != Program.NONE) ids[--count] = program.patterns[s];
+		}
+		Arrays.sort(ids);
+		return ids;
+	}
+
+	private final class Mode {
+
+		final boolean unanchored;
+
+		volatile Cache cache;
+
+		Mode(boolean unanchored) {
+			this.unanchored = unanchored;
+			this.cache = new Cache();
+		}
+
+		State next(State from, int cls) {
+			State to = from.next[cls];
+			if (to == null) {
+				int[] nfas = program.step(from.nfas, cls);
+				to = intern(unanchored ? union(nfas, program.start) : nfas);
+				// links into a flushed cache are fine, the states stay valid
+				from.next[cls] = to;
+			}
+			return to;
+		}
+
+		private State intern(int[] nfas) {
+			Cache cache = this.cache;
+			if (cache.size.get() >= budget) {
+				synchronized (this) {
+					if (this.cache == cache) {
+						this.cache = new Cache();
+						flushes.incrementAndGet();
+					}
+					cache = this.cache;
+				}
+			}
+			return cache.intern(nfas);
+		}
+
+	}
+
+	private final class Cache {
+
+		final NonBlockingHashMap<State, State> states = new NonBlockingHashMap<>();
+		final AtomicInteger size = new AtomicInteger();
+		final State startText;
+		final State start;
+
+		Cache() {
+			startText = intern(program.startText);
+			start = intern(program.start);
+		}
+
+		State intern(int[] nfas) {
+			State candidate = new State(nfas);
+			State found = states.putIfAbsent(candidate, candidate);
+			if (found != null) {
+				return found;
+			}
+			size.incrementAndGet();
+			return candidate;
+		}
+
+	}
+
+	private final class State {
+
+		final int[]   nfas;
+		// patterns accepting here, and at end of input
+		final int[]   accepts;
+		final int[]   eois;
+		final int     hash;
+		// written racily, a lost update only costs a recomputation
+		final State[] next;
+
+		State(int[] nfas) {
+			this.nfas = nfas;
+			this.accepts = patterns(nfas);
+			this.eois = patterns(program.follow(nfas, NFA.End.class));
+			this.hash = Arrays.hashCode(nfas);
+			this.next = new State[program.alphabet.size()];
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof State && Arrays.equals(nfas, ((State) o).nfas);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+	}
+
+	// sorted union of two sorted sets
+	private static int[] union(int[] a, int[] b) {
+		final int[] merged = new int[a.length + b.length];
+		int i = 0;
+		int j = 0;
+		int k = 0;
+		while (i < a.length || j < b.length) {
+			int x = j == b.length || i < a.length && a[i] < b[j] ? a[i++] : b[j++];
+			if (k == 0 || merged[k - 1] != x) {
+				merged[k++] = x;
+			}
+		}
+		return k == merged.length ? merged : Arrays.copyOf(merged, k);
+	}
+
+}
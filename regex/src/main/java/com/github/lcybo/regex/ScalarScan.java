@@ -0,0 +1,34 @@
+package com.github.lcybo.regex;
+
+// byte loops behind Scan, one byte at a time
+final class ScalarScan {
+
+	private ScalarScan() {}
+
+	static int skip(byte[] bytes, int from, int to, ByteClass set) {
+		final boolean[] members = set.members;
+		int i = from;
+		for (byte b; i < to && (b = bytes[i]) >= 0 && members[b]; ) {
+			i++;
+		}
+		return i;
+	}
+
+	static int indexOf(byte[] bytes, int from, int to, byte[] literal) {
+		final byte first = literal[0];
+		for (int i = from, last = to - literal.length; i <= last; i++) {
+			if (bytes[i] != first) {
+				continue;
+			}
+			int j = 1;
+			while (j < literal.length && bytes[i + j] == literal[j]) {
+				j++;
+			}
+			if (j == literal.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+}
@@ -0,0 +1,22 @@
+package com.github.lcybo.regex;
+
+/*
+ * Byte loops a DFA spends most of its time in. The Java 17 build of this class, under
+ * src/main/java17 in the multi-release jar, runs them on the Vector API when the
+ * jdk.incubator.vector module is present.
+ */
+final class Scan {
+
+	private Scan() {}
+
+	// first index in [from, to) whose byte is not in the set, to if none
+	static int skip(byte[] bytes, int from, int to, ByteClass set) {
+		return ScalarScan.skip(bytes, from, to, set);
+	}
+
+	// first index of the literal within [from, to), -1 if none
+	static int indexOf(byte[] bytes, int from, int to, byte[] literal) {
+		return ScalarScan.indexOf(bytes, from, to, literal);
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.github.lcybo.regex;
+
+import java.nio.ByteBuffer;
+
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public interface Searcher {
+
+	// leftmost-longest match starting at or after from, null if none
+	Match find(CharSequence cs, int from);
+
+	default Matches findAll(CharSequence cs) {
+		return new Matches(this, cs);
+	}
+
+	// over bytes without decoding them, bytes from 0x80 up never match; spans are relative to offset
+	default Match find(byte[] bytes, int offset, int length, int from) {
+		return find(Bytes.of(bytes, offset, length), from);
+	}
+
+	default Matches findAll(byte[] bytes, int offset, int length) {
+		return findAll(Bytes.of(bytes, offset, length));
+	}
+
+	// over the remaining bytes of the buffer, spans are relative to its position which is left alone
+	default Match find(ByteBuffer buffer, int from) {
+		return find(Bytes.of(buffer), from);
+	}
+
+	default Matches findAll(ByteBuffer buffer) {
+		return findAll(Bytes.of(buffer));
+	}
+
+	default Stream<Match> stream(CharSequence cs) {
+		return StreamSupport.stream(findAll(cs), false);
+	}
+
+}
@@ -0,0 +1,40 @@
+package com.github.lcybo.regex;
+
+/*
+ * Briggs-Torczon sparse set over [0, capacity): O(1) add, contains and clear, iteration in
+ * insertion order, no allocation after construction.
+ */
+final class SparseSet {
+
+	final int[] dense;
+	final int[] sparse;
+	int size;
+
+	SparseSet(int capacity) {
+		dense = new int[capacity];
+		sparse = new int[capacity];
+	}
+
+	boolean contains(int i) {
+		int j = sparse[i];
+		return j < size && dense[j] == i;
+	}
+
+	boolean add(int i) {
+		if (contains(i)) {
+			return false;
+		}
+		sparse[i] = size;
+		dense[size++] = i;
+		return true;
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+}
@@ -0,0 +1,232 @@
+package com.github.lcybo.regex;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+import static com.github.lcybo.regex.NFA.CHAR_ASCII_END;
+
+/*
+ * Push-style leftmost-longest search over input arriving in chunks, the Pike VM of PikeVM.find
+ * turned inside out: the thread list and the thread origins survive between feeds, offsets
+ * are absolute in the stream. A match is reported once no thread can make it longer.
+ *
+ * The search after a match resumes at its end, but the threads may have consumed chars past
+ * it; the chars seen while a match is pending are kept and fed again once it is reported.
+ * Bytes are chars b & 0xff, so bytes from 0x80 up never match. Not thread-safe.
+ *
+ * Those chars are the only input kept, and they are bounded: once a pending match has held
+ * limit chars (DEFAULT_LIMIT unless given) it is reported as it stands, the longest seen so far,
+ * and a longer one through the same start is lost. Memory stays in the order of limit chars
+ * whatever the length of the messages, e.g. for a.*b|a on an 'a' never followed by a 'b'.
+ */
+public class StreamMatcher {
+
+	static final int DEFAULT_LIMIT = 1 << 16;
+
+	public interface Listener {
+
+		void match(long start, long end);
+
+	}
+
+	private final Program  program;
+	private final Listener listener;
+	private final int      limit;
+
+	private final byte[]    classes;
+	private final int       width;
+	private final boolean[] hits;
+
+	private SparseSet current;
+	private SparseSet next;
+	private long[]    origins;
+	private long[]    follows;
+
+	// offset of the next char
+	private long pos;
+	// the pending match, start -1 if none
+	private long start = -1;
+	private long end   = -1;
+
+	// chars consumed since the pending match was first seen, from offset base on
+	private final StringBuilder pending = new StringBuilder();
+	private       long          base;
+	// chars to feed again after a match, from replayed on
+	private       StringBuilder replay  = new StringBuilder();
+	private       int           replayed;
+
+	StreamMatcher(Program program, Listener listener) {
+		this(program, listener, DEFAULT_LIMIT);
+	}
+
+	// limit: the chars a pending match may hold before it is reported
+	StreamMatcher(Program program, Listener listener, int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Limit too small: " + limit);
+		}
+		this.program = program;
+		this.listener = listener;
+		this.limit = limit;
+		this.classes = program.alphabet.classes;
+		this.width = program.alphabet.size();
+		final int n = program.size();
+		this.hits = new boolean[n * width];
+		for (int s = 0; s < n; s++) {
+			for (int cls = 0; cls < width; cls++) {
+				hits[s * width + cls] = program.matches(s, cls);
+			}
+		}
+		this.current = new SparseSet(n);
+		this.next = new SparseSet(n);
+		this.origins = new long[n];
+		this.follows = new long[n];
+	}
+
+	public void feed(final CharSequence cs) {
+		for (int i = 0, len = cs.length(); i < len; i++) {
+			push(cs.charAt(i));
+			drain();
+		}
+	}
+
+	// the remaining bytes of the buffer, which is consumed
+	public void feed(final ByteBuffer buffer) {
+		while (buffer.hasRemaining()) {
+			push((char) (buffer.get() & 0xff));
+			drain();
+		}
+	}
+
+	// end of stream: reports what is still pending and starts over at offset 0
+	public void finish() {
+		final long length = pos;
+		// an empty match at the end resumes past it
+		while (pos <= length) {
+			visit(true);
+			if (start < 0) {
+				break;
+			}
+			resolve();
+			drain();
+		}
+		current.clear();
+		pending.setLength(0);
+		pos = 0;
+	}
+
+	// feeds the channel up to end of stream, then finishes
+	public void read(ReadableByteChannel channel) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(8192);
+		while (channel.read(buffer) >= 0) {
+			buffer.flip();
+			feed(buffer);
+			buffer.clear();
+		}
+		finish();
+	}
+
+	public void read(Reader reader) throws IOException {
+		final CharBuffer buffer = CharBuffer.allocate(8192);
+		while (reader.read(buffer) >= 0) {
+			buffer.flip();
+			feed(buffer);
+			buffer.clear();
+		}
+		finish();
+	}
+
+	public long position() {
+		return pos;
+	}
+
+	private void drain() {
+		while (replayed < replay.length()) {
+			push(replay.charAt(replayed++));
+		}
+	}
+
+	private void push(char c) {
+		visit(false);
+		if (start >= 0) {
+			pending.append(c);
+		}
+		final SparseSet current = this.current;
+		final SparseSet next = this.next;
+		next.clear();
+		if (c < CHAR_ASCII_END) {
+			final int cls = classes[c];
+			final int[] targets = program.next;
+			final int[][] closures = program.closures;
+			for (int j = 0, size = current.size; j < size; j++) {
+				int s = current.dense[j];
+				long origin = origins[s];
+				if (start >= 0 && origin > start || !hits[s * width + cls]) {
+					continue;
+				}
+				for (int t : closures[targets[s]]) {
+					if (next.add(t)) {
+						follows[t] = origin;
+					}
+				}
+			}
+		}
+		this.current = next;
+		this.next = current;
+		long[] swap = origins;
+		origins = follows;
+		follows = swap;
+		pos++;
+		if (start >= 0 && (next.isEmpty() || pending.length() >= limit)) {
+			resolve();
+		}
+	}
+
+	// starts a thread at pos unless a match is pending, and looks for accepting threads
+	private void visit(boolean eoi) {
+		final SparseSet current = this.current;
+		if (start < 0) {
+			for (int s : pos == 0 ? program.startText : program.start) {
+				if (current.add(s)) {
+					origins[s] = pos;
+				}
+			}
+		}
+		for (int j = 0; j < current.size; j++) {
+			int s = current.dense[j];
+			if (eoi ? program.eoi[s] : program.terminal[s]) {
+				// the first accepting thread has the leftmost start
+				if (start < 0) {
+					pending.setLength(0);
+					base = pos;
+				}
+				if (start < 0 || origins[s] <= start) {
+					start = origins[s];
+					end = pos;
+				}
+				break;
+			}
+		}
+	}
+
+	// reports the pending match and queues the chars after it
+	private void resolve() {
+		listener.match(start, end);
+		long resume = end == start ? end + 1 : end;
+		final StringBuilder queue = new StringBuilder();
+		if (resume - base < pending.length()) {
+			queue.append(pending, (int) (resume - base), pending.length());
+		}
+		queue.append(replay, replayed, replay.length());
+		replay = queue;
+		replayed = 0;
+		pending.setLength(0);
+		current.clear();
+		start = -1;
+		end = -1;
+		pos = resume;
+	}
+
+}
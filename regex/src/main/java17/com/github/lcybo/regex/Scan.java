@@ -0,0 +1,23 @@
+package com.github.lcybo.regex;
+
+/*
+ * Byte loops a DFA spends most of its time in, on the Vector API when the jdk.incubator.vector
+ * module is present (--add-modules jdk.incubator.vector), one byte at a time otherwise.
+ */
+final class Scan {
+
+	private static final boolean VECTOR = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+	private Scan() {}
+
+	// first index in [from, to) whose byte is not in the set, to if none
+	static int skip(byte[] bytes, int from, int to, ByteClass set) {
+		return VECTOR ? VectorScan.skip(bytes, from, to, set) : ScalarScan.skip(bytes, from, to, set);
+	}
+
+	// first index of the literal within [from, to), -1 if none
+	static int indexOf(byte[] bytes, int from, int to, byte[] literal) {
+		return VECTOR ? VectorScan.indexOf(bytes, from, to, literal) : ScalarScan.indexOf(bytes, from, to, literal);
+	}
+
+}
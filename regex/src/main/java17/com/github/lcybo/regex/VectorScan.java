@@ -0,0 +1,75 @@
+package com.github.lcybo.regex;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * Scan on the Vector API. Class membership is two nibble lookups per lane, each a shuffle of
+ * a 16 byte table held in the first lanes of a vector; literals are found by comparing a lane
+ * group against their first and last byte, candidates verified after. Tails shorter than a
+ * vector go to ScalarScan.
+ */
+final class VectorScan {
+
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+	private VectorScan() {}
+
+	static int skip(byte[] bytes, int from, int to, ByteClass set) {
+		final int lanes = SPECIES.length();
+		if (to - from < lanes || lanes < 16) {
+			return ScalarScan.skip(bytes, from, to, set);
+		}
+		final ByteVector lows = ByteVector.fromArray(SPECIES, set.lows, 0);
+		final ByteVector highs = ByteVector.fromArray(SPECIES, set.highs, 0);
+		int i = from;
+		for (int last = to - lanes; i <= last; i += lanes) {
+			ByteVector v = ByteVector.fromArray(SPECIES, bytes, i);
+			ByteVector lo = v.and((byte) 0x0f);
+			ByteVector hi = v.lanewise(VectorOperators.LSHR, 4).and((byte) 0x0f);
+			ByteVector in = lo.selectFrom(lows).and(hi.selectFrom(highs));
+			VectorMask<Byte> out = in.compare(VectorOperators.EQ, 0);
+			if (out.anyTrue()) {
+				return i + out.firstTrue();
+			}
+		}
+		return ScalarScan.skip(bytes, i, to, set);
+	}
+
+	static int indexOf(byte[] bytes, int from, int to, byte[] literal) {
+		final int lanes = SPECIES.length();
+		final int m = literal.length;
+		if (to - from - m + 1 < lanes) {
+			return ScalarScan.indexOf(bytes, from, to, literal);
+		}
+		final ByteVector first = ByteVector.broadcast(SPECIES, literal[0]);
+		final ByteVector last = ByteVector.broadcast(SPECIES, literal[m - 1]);
+		int i = from;
+		for (int end = to - m + 1 - lanes; i <= end; i += lanes) {
+			VectorMask<Byte> hits = ByteVector.fromArray(SPECIES, bytes, i).compare(VectorOperators.EQ, first)
+					.and(ByteVector.fromArray(SPECIES, bytes, i + m - 1).compare(VectorOperators.EQ, last));
+			if (!hits.anyTrue()) {
+				continue;
+			}
+			for (long bits = hits.toLong(); bits != 0; bits &= bits - 1) {
+				int at = i + Long.numberOfTrailingZeros(bits);
+				if (matches(bytes, at, literal)) {
+					return at;
+				}
+			}
+		}
+		return ScalarScan.indexOf(bytes, i, to, literal);
+	}
+
+	private static boolean matches(byte[] bytes, int at, byte[] literal) {
+		for (int j = 1; j < literal.length - 1; j++) {
+			if (bytes[at + j] != literal[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,368 @@
+package com.github.lcybo.regex;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import static com.github.lcybo.regex.NFA.CHAR_ASCII_END;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class DfaTest {
+
+	static final String[] PATTERNS = {
+			"abc|[a-k]*c", "[a-z0-9]*", "(ab)*z", "zz[d-gx]+", "zz[d-gx]{2,5}", "b([adk]1b)*5",
+			"a|bc", "[^]a-k0-6-]x", "\\d+\\.\\w*", "(a|b)*a(a|b){3}", "[a-k]*c|[c-z]b", "x?y?z?", "(a*b|c)+d"
+	};
+
+	static final String ALPHABET = "abcdkxyz015.-]g";
+
+	static String random(Random random, int max) {
+		int n = random.nextInt(max + 1);
+		StringBuilder sb = new StringBuilder(n);
+		for (int i = 0; i < n; i++) {
+			sb.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+		}
+		return sb.toString();
+	}
+
+	@Test
+	public void matchesAgreeWithJdk() {
+		Random random = new Random(7);
+		for (String regex : PATTERNS) {
+			Dfa dfa = new NFA(regex).getGraph().convert().execute().compile();
+			Pattern pattern = Pattern.compile(regex);
+			for (int i = 0; i < 5000; i++) {
+				String s = random(random, 8);
+				assertEquals(pattern.matcher(s).matches(), dfa.matches(s), regex + " on '" + s + "'");
+			}
+		}
+	}
+
+	@Test
+	public void rejectNonAscii() {
+		Dfa dfa = new NFA(".*").getGraph().convert().execute().compile();
+		assertEquals(true, dfa.matches("abc"));
+		assertEquals(false, dfa.matches("abé"));
+	}
+
+	@Test
+	public void matchBytes() {
+		Random random = new Random(47);
+		for (String regex : PATTERNS) {
+			Dfa dfa = new NFA(regex).getGraph().convert().execute().compile();
+			for (int i = 0; i < 2000; i++) {
+				String s = random(random, 8);
+				byte[] bytes = ("<" + s + ">").getBytes(StandardCharsets.US_ASCII);
+				ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes);
+				direct.position(1).limit(bytes.length - 1);
+				ByteBuffer heap = ByteBuffer.wrap(bytes, 1, s.length()).slice();
+				boolean expected = dfa.matches(s);
+				assertEquals(expected, dfa.matches(bytes, 1, s.length()), regex + " on '" + s + "'");
+				assertEquals(expected, dfa.matches(direct), regex + " on '" + s + "'");
+				assertEquals(expected, dfa.matches(heap), regex + " on '" + s + "'");
+				assertEquals(1, direct.position());
+			}
+		}
+		Dfa dfa = new NFA(".*").getGraph().convert().execute().compile();
+		assertEquals(false, dfa.matches("abé".getBytes(StandardCharsets.UTF_8), 0, 4));
+		assertEquals(true, dfa.matches("abé".getBytes(StandardCharsets.UTF_8), 0, 2));
+	}
+
+	@Test
+	public void parallelMatches() {
+		Random random = new Random(61);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (String regex : PATTERNS) {
+				Dfa dfa = new NFA(regex).getGraph().convert().execute().compile();
+				for (int i = 0; i < 500; i++) {
+					String s = random(random, 40);
+					for (int chunk : new int[]{1, 3, 7}) {
+						assertEquals(dfa.matches(s), dfa.matches(s, pool, chunk), regex + " on '" + s + "' in chunks of " + chunk);
+					}
+				}
+			}
+			Dfa dfa = new NFA("(a|b)*a(a|b){3}").getGraph().convert().execute().compile();
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 1_000_000; i++) {
+				sb.append(random.nextBoolean() ? 'a' : 'b');
+			}
+			sb.append("abab");
+			assertEquals(true, dfa.matches(sb, pool));
+			sb.setCharAt(500_000, '\u00e9');
+			assertEquals(false, dfa.matches(sb, pool));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void scanBytes() {
+		Random random = new Random(71);
+		ByteClass set = new ByteClass(0x03ff_0000_0000_0000L, 0x07ff_fffe_0000_0000L);
+		assertEquals(true, set.contains((byte) 'a'));
+		assertEquals(true, set.contains((byte) '9'));
+		assertEquals(false, set.contains((byte) '{'));
+		assertEquals(false, set.contains((byte) 0xe1));
+		byte[] literal = "ab1".getBytes(StandardCharsets.US_ASCII);
+		for (int i = 0; i < 2000; i++) {
+			byte[] bytes = random(random, 200).getBytes(StandardCharsets.US_ASCII);
+			if (bytes.length > 0 && random.nextInt(4) == 0) {
+				bytes[random.nextInt(bytes.length)] = (byte) 0xe1;
+			}
+			int from = random.nextInt(bytes.length + 1);
+			assertEquals(ScalarScan.skip(bytes, from, bytes.length, set), Scan.skip(bytes, from, bytes.length, set));
+			assertEquals(ScalarScan.indexOf(bytes, from, bytes.length, literal), Scan.indexOf(bytes, from, bytes.length, literal));
+		}
+		// long runs through a self loop
+		Dfa dfa = new NFA("[a-z0-9]*x!").getGraph().convert().execute().compile();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			sb.append((char) ('a' + random.nextInt(26)));
+		}
+		assertEquals(true, dfa.matches((sb + "x!").getBytes(StandardCharsets.US_ASCII), 0, sb.length() + 2));
+		assertEquals(false, dfa.matches((sb + "x?").getBytes(StandardCharsets.US_ASCII), 0, sb.length() + 2));
+	}
+
+	@Test
+	public void generatedAgreeWithJdk() {
+		Random random = new Random(73);
+		for (String regex : PATTERNS) {
+			CompiledDfa dfa = new NFA(regex).getGraph().convert().execute().minimize().generate();
+			Pattern pattern = Pattern.compile(regex);
+			for (int i = 0; i < 2000; i++) {
+				String s = random(random, 8);
+				byte[] bytes = (" " + s).getBytes(StandardCharsets.US_ASCII);
+				assertEquals(pattern.matcher(s).matches(), dfa.matches(s), regex + " on '" + s + "'");
+				assertEquals(pattern.matcher(s).matches(), dfa.matches(bytes, 1, s.length()), regex + " on '" + s + "'");
+			}
+		}
+		CompiledDfa dfa = new NFA(".*").getGraph().convert().execute().generate();
+		assertEquals(true, dfa.matches("abc"));
+		assertEquals(false, dfa.matches("abé"));
+		assertEquals(false, dfa.matches("abé".getBytes(StandardCharsets.UTF_8), 0, 4));
+		// bad ranges throw as in Dfa
+		byte[] abc = "abc".getBytes(StandardCharsets.US_ASCII);
+		assertThrows(IndexOutOfBoundsException.class, () -> dfa.matches(abc, -1, 2));
+		assertThrows(IndexOutOfBoundsException.class, () -> dfa.matches(abc, 1, -1));
+		assertThrows(IndexOutOfBoundsException.class, () -> dfa.matches(abc, 2, 2));
+		assertThrows(IndexOutOfBoundsException.class, () -> dfa.matches(abc, Integer.MAX_VALUE, 1));
+		assertEquals(true, dfa.matches(abc, 3, 0));
+	}
+
+	@Test
+	public void mappedAgreeWithJdk() throws IOException {
+		Random random = new Random(79);
+		Path file = Files.createTempFile("dfa", ".bin");
+		try {
+			for (String regex : PATTERNS) {
+				Dfa dfa = new NFA(regex).getGraph().convert().execute().minimize().compile();
+				try (OutputStream out = Files.newOutputStream(file)) {
+					dfa.write(out);
+				}
+				MappedDfa mapped = MappedDfa.load(file);
+				Dfa copy = mapped.toDfa();
+				Pattern pattern = Pattern.compile(regex);
+				for (int i = 0; i < 2000; i++) {
+					String s = random(random, 8);
+					byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+					assertEquals(pattern.matcher(s).matches(), mapped.matches(s), regex + " on '" + s + "'");
+					assertEquals(pattern.matcher(s).matches(), mapped.matches(bytes, 0, bytes.length), regex + " on '" + s + "'");
+					assertEquals(pattern.matcher(s).matches(), copy.matches(s), regex + " on '" + s + "'");
+				}
+			}
+		} finally {
+			Files.delete(file);
+		}
+		// anchors give distinct starts and end of input bitmaps
+		Dfa anchored = Determinizer.anchored(new Program(new NFA("^ab|b$").getGraph()));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		anchored.write(out);
+		MappedDfa mapped = new MappedDfa(ByteBuffer.wrap(out.toByteArray()));
+		for (String s : new String[]{"ab", "b", "abb", "", "ba"}) {
+			assertEquals(anchored.matches(s), mapped.matches(s), s);
+		}
+		byte[] corrupt = out.toByteArray();
+		corrupt[MappedDfa.HEADER + CHAR_ASCII_END + 3] = 1;
+		assertThrows(IllegalStateException.class, () -> new MappedDfa(ByteBuffer.wrap(corrupt)));
+		assertThrows(IllegalStateException.class, () -> new MappedDfa(ByteBuffer.wrap(Arrays.copyOf(corrupt, 40))));
+	}
+
+	@Test
+	public void precompiledAgreeWithJdk() {
+		List<Predicate<String>> chars = List.of(
+				TestPatterns::alternation,
+				TestPatterns::alnum,
+				TestPatterns::pairs,
+				TestPatterns::classPlus,
+				TestPatterns::classRepeat,
+				TestPatterns::groupStar,
+				TestPatterns::either,
+				TestPatterns::negated,
+				TestPatterns::number,
+				TestPatterns::fourthLast,
+				TestPatterns::union,
+				TestPatterns::optionals,
+				TestPatterns::nested);
+		List<Predicate<byte[]>> bytes = List.of(
+				b -> TestPatterns.alternation(b, 0, b.length),
+				b -> TestPatterns.alnum(b, 0, b.length),
+				b -> TestPatterns.pairs(b, 0, b.length),
+				b -> TestPatterns.classPlus(b, 0, b.length),
+				b -> TestPatterns.classRepeat(b, 0, b.length),
+				b -> TestPatterns.groupStar(b, 0, b.length),
+				b -> TestPatterns.either(b, 0, b.length),
+				b -> TestPatterns.negated(b, 0, b.length),
+				b -> TestPatterns.number(b, 0, b.length),
+				b -> TestPatterns.fourthLast(b, 0, b.length),
+				b -> TestPatterns.union(b, 0, b.length),
+				b -> TestPatterns.optionals(b, 0, b.length),
+				b -> TestPatterns.nested(b, 0, b.length));
+		Random random = new Random(83);
+		for (int p = 0; p < PATTERNS.length; p++) {
+			Pattern pattern = Pattern.compile(PATTERNS[p]);
+			for (int i = 0; i < 2000; i++) {
+				String s = random(random, 8);
+				assertEquals(pattern.matcher(s).matches(), chars.get(p).test(s), PATTERNS[p] + " on '" + s + "'");
+				assertEquals(pattern.matcher(s).matches(), bytes.get(p).test(s.getBytes(StandardCharsets.US_ASCII)), PATTERNS[p] + " on '" + s + "'");
+			}
+		}
+		assertEquals(false, TestPatterns.alnum("abé"));
+		assertEquals(false, TestPatterns.alnum("abé".getBytes(StandardCharsets.UTF_8), 0, 4));
+		// bad ranges throw as in Dfa, even where the empty input matches
+		byte[] abc = "abc".getBytes(StandardCharsets.US_ASCII);
+		assertThrows(IndexOutOfBoundsException.class, () -> TestPatterns.alnum(abc, 0, -1));
+		assertThrows(IndexOutOfBoundsException.class, () -> TestPatterns.alnum(abc, -1, 1));
+		assertThrows(IndexOutOfBoundsException.class, () -> TestPatterns.alnum(abc, 2, 2));
+		assertThrows(IndexOutOfBoundsException.class, () -> TestPatterns.pairs(abc, 1, 5));
+		assertEquals(true, TestPatterns.alnum(abc, 3, 0));
+	}
+
+	@Test
+	public void nestedClosures() {
+		Random random = new Random(97);
+		for (String regex : new String[]{"(a*)*", "((a?)*b*)*c", "(a|b?)*", "((ab)*|c?)+d*", "(x?y?)*z"}) {
+			NFAGraph graph = new NFA(regex).getGraph();
+			Dfa dfa = graph.convert().execute().compile();
+			Pattern pattern = Pattern.compile(regex);
+			for (int i = 0; i < 500; i++) {
+				String s = random(random, 8);
+				assertEquals(pattern.matcher(s).matches(), dfa.matches(s), regex + " on '" + s + "'");
+				assertEquals(pattern.matcher(s).matches(), graph.simulate().test(s), regex + " on '" + s + "'");
+			}
+		}
+		// the closures are dropped once the graph changes
+		NFAGraph graph = new NFA("a*").getGraph();
+		assertEquals(true, graph.simulate().test("aa"));
+		graph.concat(new NFA("b").getGraph());
+		assertEquals(false, graph.simulate().test("aa"));
+		assertEquals(true, graph.simulate().test("aab"));
+		assertEquals(true, graph.convert().execute().compile().matches("b"));
+	}
+
+	@Test
+	public void alphabetClasses() {
+		NFAGraph graph = new NFA("[a-z0-9]*").getGraph();
+		Alphabet alphabet = graph.alphabet();
+		assertEquals(5, alphabet.size());
+		assertEquals(alphabet.classOf('a'), alphabet.classOf('z'));
+		assertEquals(alphabet.classOf('0'), alphabet.classOf('9'));
+		assertEquals(alphabet.classOf(' '), alphabet.classOf('/'));
+		assertEquals(5, graph.convert().execute().compile().classes());
+	}
+
+	@Test
+	public void lazyMatchesAgreeWithJdk() {
+		Random random = new Random(11);
+		String[] anchored = {"^ab", "ab$", "(^a|b)c", "((a*)*b)*", ""};
+		for (String[] patterns : new String[][]{PATTERNS, anchored}) {
+			for (String regex : patterns) {
+				// tiny budget forces flushes and NFA fallback
+				LazyDfa dfa = new NFA(regex).getGraph().lazy(3);
+				Pattern pattern = Pattern.compile(regex);
+				for (int i = 0; i < 5000; i++) {
+					String s = random(random, 8);
+					assertEquals(pattern.matcher(s).matches(), dfa.matches(s), regex + " on '" + s + "'");
+				}
+			}
+		}
+	}
+
+	@Test
+	public void lazyBoundedCache() {
+		LazyDfa dfa = new NFA("(a|b)*a(a|b){15}").getGraph().lazy(256);
+		Random random = new Random(3);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			sb.append(random.nextBoolean() ? 'a' : 'b');
+		}
+		assertEquals(sb.charAt(sb.length() - 16) == 'a', dfa.matches(sb));
+		assertEquals(true, dfa.states() <= 256);
+	}
+
+	@Test
+	public void minimize() {
+		Random random = new Random(5);
+		for (String regex : PATTERNS) {
+			DFAGraph graph = new NFA(regex).getGraph().convert().execute();
+			DFAGraph minimal = graph.minimize();
+			assertEquals(true, minimal.size() <= graph.size(), regex);
+			Dfa dfa = minimal.compile();
+			Pattern pattern = Pattern.compile(regex);
+			for (int i = 0; i < 2000; i++) {
+				String s = random(random, 8);
+				assertEquals(pattern.matcher(s).matches(), dfa.matches(s), regex + " on '" + s + "'");
+			}
+		}
+		assertEquals(2, new NFA("abc|[a-k]*c").getGraph().convert().execute().minimize().size());
+		assertEquals(16, new NFA("(a|b)*a(a|b){3}").getGraph().convert().execute().minimize().size());
+	}
+
+	@Test
+	public void pikeMatchesAgreeWithJdk() {
+		Random random = new Random(13);
+		String[] anchored = {"^ab", "ab$", "(^a|b)c", "((a*)*b)*", "", "(a|b)*a(a|b){15}"};
+		for (String[] patterns : new String[][]{PATTERNS, anchored}) {
+			for (String regex : patterns) {
+				PikeVM vm = new NFA(regex).getGraph().vm();
+				Pattern pattern = Pattern.compile(regex);
+				for (int i = 0; i < 5000; i++) {
+					String s = random(random, 20);
+					assertEquals(pattern.matcher(s).matches(), vm.test(s), regex + " on '" + s + "'");
+				}
+			}
+		}
+	}
+
+	@Test
+	public void bitParallelAgreeWithJdk() {
+		Random random = new Random(17);
+		// the last two need more than one 64 bit word
+		String[] more = {"^ab", "ab$", "(^a|b)c", "((a*)*b)*", "", "(a|b)*a(a|b){15}", "(a|b)*a(a|b){40}", "[a-d]{30,70}"};
+		for (String[] patterns : new String[][]{PATTERNS, more}) {
+			for (String regex : patterns) {
+				BitParallel bp = new NFA(regex).getGraph().bitParallel();
+				Pattern pattern = Pattern.compile(regex);
+				for (int i = 0; i < 3000; i++) {
+					String s = random(random, i % 10 == 0 ? 80 : 20);
+					assertEquals(pattern.matcher(s).matches(), bp.test(s), regex + " on '" + s + "'");
+				}
+			}
+		}
+		assertEquals(true, new NFA("[a-d]{30,70}").getGraph().bitParallel().test("abcdabcdabcdabcdabcdabcdabcdabcdabcdabcd"));
+	}
+
+}
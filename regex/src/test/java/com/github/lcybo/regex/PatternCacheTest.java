@@ -0,0 +1,98 @@
+package com.github.lcybo.regex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PatternCacheTest {
+
+	@Test
+	public void compilesOnce() throws Exception {
+		final AtomicInteger compiled = new AtomicInteger();
+		final CountDownLatch ready = new CountDownLatch(8);
+		final PatternCache<Finder> cache = new PatternCache<>(regex -> {
+			compiled.incrementAndGet();
+			return new NFA(regex).getGraph().finder();
+		});
+		final ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Finder>> futures = new ArrayList<>();
+			for (int t = 0; t < 8; t++) {
+				futures.add(pool.submit(() -> {
+					ready.countDown();
+					ready.await();
+					return cache.get("(ab|cd)+x[0-9]*");
+				}));
+			}
+			Finder first = futures.get(0).get();
+			for (Future<Finder> future : futures) {
+				assertSame(first, future.get());
+			}
+		} finally {
+			pool.shutdown();
+		}
+		assertEquals(1, compiled.get());
+		assertEquals(1, cache.misses());
+		assertEquals(7, cache.hits());
+		assertEquals(new Match(2, 8), cache.get("(ab|cd)+x[0-9]*").find("xxcdabx1 ", 0));
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsed() {
+		final PatternCache<Finder> cache = new PatternCache<>(regex -> new NFA(regex).getGraph().finder(), 2, 1);
+		Finder a = cache.get("a");
+		cache.get("b");
+		assertSame(a, cache.get("a"));
+		cache.get("c");
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.evictions());
+		assertSame(a, cache.get("a"));
+		cache.get("b");
+		assertEquals(4, cache.misses());
+		cache.invalidate("a");
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void failuresNotCached() {
+		final AtomicInteger compiled = new AtomicInteger();
+		final PatternCache<Finder> cache = new PatternCache<>(regex -> {
+			compiled.incrementAndGet();
+			return new NFA(regex).getGraph().finder();
+		});
+		assertThrows(IllegalStateException.class, () -> cache.get("a)"));
+		assertThrows(IllegalStateException.class, () -> cache.get("a)"));
+		assertEquals(2, compiled.get());
+		assertEquals(0, cache.size());
+		assertTrue(cache.toString().contains("misses 2"));
+	}
+
+	@Test
+	public void recursiveCompilation() {
+		final List<PatternCache<String>> self = new ArrayList<>();
+		final PatternCache<String> cache = new PatternCache<>(regex -> {
+			if (regex.equals("self")) {
+				return self.get(0).get(regex);
+			}
+			return regex.startsWith("+") ? self.get(0).get(regex.substring(1)) + "+" : regex;
+		});
+		self.add(cache);
+		// other regexes compile inside a compilation, its own one would wait on itself
+		assertEquals("x++", cache.get("++x"));
+		assertEquals(3, cache.size());
+		assertThrows(IllegalStateException.class, () -> cache.get("self"));
+		assertEquals(3, cache.size());
+	}
+
+}
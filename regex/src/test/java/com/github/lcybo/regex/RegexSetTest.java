@@ -0,0 +1,91 @@
+package com.github.lcybo.regex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static com.github.lcybo.regex.DfaTest.random;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RegexSetTest {
+
+	static final List<String> PATTERNS = Arrays.asList(SearchTest.PATTERNS);
+
+	@Test
+	public void matchesAgreeWithJdk() {
+		RegexSet set = new RegexSet(PATTERNS);
+		List<Pattern> patterns = PATTERNS.stream().map(Pattern::compile).collect(Collectors.toList());
+		Random random = new Random(37);
+		for (int i = 0; i < 5000; i++) {
+			String s = random(random, 12);
+			List<Integer> expected = new ArrayList<>();
+			for (int id = 0; id < patterns.size(); id++) {
+				if (patterns.get(id).matcher(s).matches()) {
+					expected.add(id);
+				}
+			}
+			assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), set.matches(s), s);
+		}
+	}
+
+	@Test
+	public void searchAgreesWithJdk() {
+		RegexSet set = new RegexSet(PATTERNS);
+		List<Pattern> patterns = PATTERNS.stream().map(Pattern::compile).collect(Collectors.toList());
+		Random random = new Random(41);
+		for (int i = 0; i < 5000; i++) {
+			String s = random(random, 12);
+			List<Integer> expected = new ArrayList<>();
+			int first = -1;
+			for (int end = 0; end <= s.length() && first < 0; end++) {
+				for (int id = 0; id < patterns.size() && first < 0; id++) {
+					if (endsAt(patterns.get(id), s, end)) {
+						first = id;
+					}
+				}
+			}
+			for (int id = 0; id < patterns.size(); id++) {
+				if (SearchTest.reference(patterns.get(id), s, 0) != null) {
+					expected.add(id);
+				}
+			}
+			assertArrayEquals(expected.stream().mapToInt(Integer::intValue).toArray(), set.search(s), s);
+			assertEquals(first, set.first(s), s);
+		}
+	}
+
+	private static boolean endsAt(Pattern pattern, String s, int end) {
+		Matcher m = pattern.matcher(s);
+		for (int start = 0; start <= end; start++) {
+			m.region(start, end).useAnchoringBounds(false).useTransparentBounds(true);
+			if (m.matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void boundedCache() {
+		RegexSet set = new RegexSet(PATTERNS, 8);
+		Random random = new Random(43);
+		for (int i = 0; i < 200; i++) {
+			String s = random(random, 30);
+			for (int id : set.search(s)) {
+				assertTrue(SearchTest.reference(Pattern.compile(PATTERNS.get(id)), s, 0) != null, s);
+			}
+		}
+		assertTrue(set.flushes() > 0);
+		assertArrayEquals(new int[]{1, 3}, new RegexSet("ab", "b+", "c", "a?b").search("xxbb"));
+		assertArrayEquals(new int[0], new RegexSet("ab", "cd").matches("abé"));
+	}
+
+}
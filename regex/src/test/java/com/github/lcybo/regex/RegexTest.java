@@ -0,0 +1,186 @@
+package com.github.lcybo.regex;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+import static com.github.lcybo.regex.DfaTest.random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RegexTest {
+
+	@Test
+	public void matcherAgreesWithJdk() {
+		Random random = new Random(89);
+		for (String regex : SearchTest.PATTERNS) {
+			Regex compiled = Regex.compile(regex);
+			Regex.Matcher matcher = compiled.matcher();
+			Pattern pattern = Pattern.compile(regex);
+			for (int i = 0; i < 1000; i++) {
+				String s = random(random, 12);
+				matcher.reset(s);
+				List<Match> found = new ArrayList<>();
+				while (matcher.find()) {
+					found.add(new Match(matcher.start(), matcher.end()));
+				}
+				List<Match> expected = new ArrayList<>();
+				compiled.finder().findAll(s).forEachRemaining(expected::add);
+				assertEquals(expected, found, regex + " on '" + s + "'");
+				assertEquals(expected.isEmpty() ? null : expected.get(0), SearchTest.reference(pattern, s, 0), regex + " on '" + s + "'");
+				assertEquals(pattern.matcher(s).matches(), compiled.matches(s), regex + " on '" + s + "'");
+				assertEquals(pattern.matcher(s).matches(), matcher.matches(), regex + " on '" + s + "'");
+			}
+		}
+	}
+
+	@Test
+	public void matcherState() {
+		Regex.Matcher m = Regex.compile("a+b?").matcher("xaab ab");
+		assertThrows(IllegalStateException.class, m::start);
+		assertTrue(m.find());
+		assertEquals("aab", m.group());
+		assertTrue(m.find());
+		assertEquals(5, m.start());
+		assertEquals(7, m.end());
+		assertFalse(m.find());
+		assertThrows(IllegalStateException.class, m::group);
+		assertTrue(m.find(2));
+		assertEquals("ab", m.group());
+		assertTrue(m.reset().find());
+		assertEquals(1, m.start());
+		assertFalse(m.reset("aab").find(3));
+		assertTrue(m.matches());
+		assertEquals("aab", m.group());
+	}
+
+	@Test
+	public void compileCached() {
+		final long misses = Regex.cache().misses();
+		Regex first = Regex.compile("cached[0-9]+x");
+		assertSame(first, Regex.compile("cached[0-9]+x"));
+		assertEquals(misses + 1, Regex.cache().misses());
+		Regex.cache().invalidate("cached[0-9]+x");
+		assertNotSame(first, Regex.compile("cached[0-9]+x"));
+		assertThrows(IllegalStateException.class, () -> Regex.compile("a)"));
+	}
+
+	@Test
+	public void anchoredShared() {
+		// the Finder's anchored DFA serves whole input matches too
+		Regex prefixed = Regex.compile("user=\\d+");
+		assertNotNull(prefixed.finder().anchored);
+		assertSame(prefixed.finder().anchored, prefixed.whole);
+		Regex plain = Regex.compile("[a-z]+x?");
+		assertNull(plain.finder().anchored);
+		assertNotNull(plain.whole);
+		assertTrue(plain.matches("abax"));
+	}
+
+	@Test
+	public void sharedBetweenThreads() throws Exception {
+		final Regex regex = Regex.compile("(ab|cd)+x[0-9]*");
+		final ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Integer>> counts = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				counts.add(pool.submit(() -> {
+					Regex.Matcher m = regex.matcher();
+					int count = 0;
+					for (int i = 0; i < 10_000; i++) {
+						m.reset(i % 2 == 0 ? "-abcdx12-cdx-" : "abx");
+						while (m.find()) {
+							count++;
+						}
+					}
+					return count;
+				}));
+			}
+			for (Future<Integer> count : counts) {
+				assertEquals(15_000, count.get().intValue());
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void graphSharedBetweenThreads() throws Exception {
+		final ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			for (int round = 0; round < 50; round++) {
+				// every compiler finishes the same graph, concurrently
+				final NFAGraph graph = new NFA("(a|b?)*c(ab)+").getGraph();
+				List<Future<Boolean>> results = new ArrayList<>();
+				for (int t = 0; t < 4; t++) {
+					final int kind = t;
+					results.add(pool.submit(() -> {
+						switch (kind) {
+							case 0:
+								return graph.finder().find("xxabcabab", 0).equals(new Match(2, 9));
+							case 1:
+								return graph.simulate().test("abcab");
+							case 2:
+								return graph.convert().execute().compile().matches("bcabab");
+							default:
+								return new Program(graph).size() > 0;
+						}
+					}));
+				}
+				for (Future<Boolean> result : results) {
+					assertTrue(result.get());
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	@Test
+	public void tooLargeForDfa() {
+		// the 15th char from the end is an 'a': 2^15 DFA states
+		final String regex = "(a|b)*a(a|b){14}";
+		Regex compiled = Regex.compile(regex);
+		assertTrue(compiled.finder().stats().startsWith("pike vm"), compiled.finder().stats());
+		assertThrows(UnsupportedOperationException.class, () -> compiled.finder().scan(Paths.get("none")));
+		assertNull(compiled.whole);
+		Pattern pattern = Pattern.compile(regex);
+		Regex.Matcher matcher = compiled.matcher();
+		Random random = new Random(103);
+		for (int i = 0; i < 300; i++) {
+			StringBuilder sb = new StringBuilder();
+			for (int j = random.nextInt(24); j > 0; j--) {
+				sb.append("abc".charAt(random.nextInt(3)));
+			}
+			String s = sb.toString();
+			assertEquals(pattern.matcher(s).matches(), compiled.matches(s), s);
+			Match expected = SearchTest.reference(pattern, s, 0);
+			assertEquals(expected != null, matcher.reset(s).find(), s);
+			if (expected != null) {
+				assertEquals(expected, new Match(matcher.start(), matcher.end()), s);
+			}
+		}
+	}
+
+	@Test
+	public void simulationReusable() {
+		NFAGraph.Simulation simulation = new NFA("(ab)+c").getGraph().simulate();
+		assertTrue(simulation.test("ababc"));
+		assertFalse(simulation.test("abab"));
+		assertTrue(simulation.test("abc"));
+	}
+
+}
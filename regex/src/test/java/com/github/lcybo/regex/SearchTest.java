@@ -0,0 +1,376 @@
+package com.github.lcybo.regex;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static com.github.lcybo.regex.DfaTest.random;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SearchTest {
+
+	static final String[] PATTERNS = {
+			"abc|[a-k]*c", "[a-z0-9]*", "(ab)*z", "zz[d-gx]+", "b([adk]1b)*5", "a|bc", "\\d+\\.\\w*",
+			"(a|b)*a(a|b){3}", "x?y?z?", "(a*b|c)+d", "^ab", "ab$", "(^a|b)c", "ab|bcde", "abcd|c", "a.*z|b",
+			"ab[cd]*", "k0+\\.?", "(ab|ac)d", "(a|bc)?kx", "x[0-5]{1,3}yz", "[abc]*dkz", "(ab)+k", "[a-d]+kz\\.",
+			"(kxa|ka|x1)z*", "(abcd|bc|c)d?"
+	};
+
+	// leftmost-longest by brute force
+	static Match reference(Pattern pattern, String s, int from) {
+		Matcher m = pattern.matcher(s);
+		for (int start = from; start <= s.length(); start++) {
+			for (int end = s.length(); end >= start; end--) {
+				m.region(start, end).useAnchoringBounds(false).useTransparentBounds(true);
+				if (m.matches()) {
+					return new Match(start, end);
+				}
+			}
+		}
+		return null;
+	}
+
+	@Test
+	public void pikeFind() {
+		Random random = new Random(19);
+		for (String regex : PATTERNS) {
+			PikeVM vm = new NFA(regex).getGraph().vm();
+			Pattern pattern = Pattern.compile(regex);
+			for (int i = 0; i < 2000; i++) {
+				String s = random(random, 12);
+				int from = random.nextInt(s.length() + 1);
+				assertEquals(reference(pattern, s, from), vm.find(s, from), regex + " on '" + s + "' from " + from);
+			}
+		}
+	}
+
+	@Test
+	public void pikeFindSpans() {
+		PikeVM vm = new NFA("ab|bcde").getGraph().vm();
+		assertEquals(new Match(0, 2), vm.find("abcde", 0));
+		assertEquals(new Match(1, 5), vm.find("abcde", 1));
+		assertNull(vm.find("abcde", 2));
+		assertEquals("aaaz", new NFA("a.*z|b").getGraph().vm().find("xaaazb", 0).of("xaaazb"));
+	}
+
+	@Test
+	public void finderFind() {
+		Random random = new Random(23);
+		for (String regex : PATTERNS) {
+			Finder finder = new NFA(regex).getGraph().finder();
+			PikeVM vm = new NFA(regex).getGraph().vm();
+			Pattern pattern = Pattern.compile(regex);
+			for (int i = 0; i < 2000; i++) {
+				String s = random(random, 12);
+				int from = random.nextInt(s.length() + 1);
+				assertEquals(reference(pattern, s, from), finder.find(s, from), regex + " on '" + s + "' from " + from);
+				// non-ASCII never matches and breaks every thread crossing it
+				String t = s.substring(0, from) + '\u00e9' + s.substring(from);
+				assertEquals(vm.find(t, from), finder.find(t, from), regex + " on '" + t + "' from " + from);
+			}
+		}
+	}
+
+	@Test
+	public void reverse() {
+		Random random = new Random(29);
+		for (String regex : PATTERNS) {
+			PikeVM reversed = new NFA(regex).getGraph().reverse().vm();
+			Pattern pattern = Pattern.compile(regex);
+			for (int i = 0; i < 2000; i++) {
+				String s = random(random, 10);
+				String r = new StringBuilder(s).reverse().toString();
+				assertEquals(pattern.matcher(s).matches(), reversed.test(r), regex + " on '" + s + "'");
+			}
+		}
+	}
+
+	@Test
+	public void findAll() {
+		Random random = new Random(31);
+		for (String regex : PATTERNS) {
+			Pattern pattern = Pattern.compile(regex);
+			for (Searcher searcher : new Searcher[]{new NFA(regex).getGraph().vm(), new NFA(regex).getGraph().finder()}) {
+				for (int i = 0; i < 300; i++) {
+					String s = random(random, 16);
+					List<Match> expected = new ArrayList<>();
+					for (int from = 0; from <= s.length(); ) {
+						Match m = reference(pattern, s, from);
+						if (m == null) {
+							break;
+						}
+						expected.add(m);
+						from = m.end() == m.start() ? m.end() + 1 : m.end();
+					}
+					assertEquals(expected, searcher.stream(s).collect(Collectors.toList()), regex + " on '" + s + "'");
+				}
+			}
+		}
+	}
+
+	@Test
+	public void findBytes() {
+		Finder finder = new NFA("user=\\d+").getGraph().finder();
+		byte[] bytes = "xx user=1 user=\u00e92 user=34".getBytes(StandardCharsets.UTF_8);
+		List<Match> expected = List.of(new Match(1, 7), new Match(17, 24));
+		assertEquals(expected, StreamSupport.stream(finder.findAll(bytes, 2, bytes.length - 2), false).collect(Collectors.toList()));
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes);
+		direct.position(2);
+		assertEquals(expected, StreamSupport.stream(finder.findAll(direct), false).collect(Collectors.toList()));
+		assertEquals(2, direct.position());
+		assertEquals(new Match(17, 24), new NFA("user=\\d+").getGraph().vm().find(ByteBuffer.wrap(bytes).position(2), 2));
+	}
+
+	@Test
+	public void scan() throws IOException {
+		Random random = new Random(53);
+		Path file = Files.createTempFile("scan", ".log");
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			for (String regex : PATTERNS) {
+				Finder finder = new NFA(regex).getGraph().finder();
+				for (int i = 0; i < 50; i++) {
+					String s = random(random, 60);
+					Files.write(file, s.getBytes(StandardCharsets.US_ASCII));
+					List<FileMatch> expected = finder.stream(s)
+							.map(m -> new FileMatch(m.start(), m.end()))
+							.collect(Collectors.toList());
+					for (int window : new int[]{1, 3, 16, 64}) {
+						assertEquals(expected, finder.scan(channel, window).stream().collect(Collectors.toList()),
+								regex + " on '" + s + "' in windows of " + window);
+					}
+				}
+			}
+			Files.write(file, "id=1\u00e9 id=22".getBytes(StandardCharsets.UTF_8));
+			try (MappedScan scan = new NFA("id=\\d+").getGraph().finder().scan(file)) {
+				assertEquals(new FileMatch(0, 4), scan.next());
+				assertEquals(new FileMatch(7, 12), scan.next());
+				assertEquals(false, scan.hasNext());
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	@Test
+	public void streaming() throws IOException {
+		Random random = new Random(59);
+		for (String regex : PATTERNS) {
+			Finder finder = new NFA(regex).getGraph().finder();
+			List<Match> found = new ArrayList<>();
+			StreamMatcher matcher = new NFA(regex).getGraph().streaming((start, end) -> found.add(new Match((int) start, (int) end)));
+			for (int i = 0; i < 500; i++) {
+				String s = random(random, 20);
+				List<Match> expected = finder.stream(s).collect(Collectors.toList());
+				found.clear();
+				for (int at = 0; at < s.length(); ) {
+					int chunk = Math.min(s.length() - at, random.nextInt(4));
+					if (random.nextBoolean()) {
+						matcher.feed(s.substring(at, at + chunk));
+					} else {
+						matcher.feed(ByteBuffer.wrap(s.substring(at, at + chunk).getBytes(StandardCharsets.US_ASCII)));
+					}
+					at += chunk;
+				}
+				matcher.finish();
+				assertEquals(expected, found, regex + " on '" + s + "'");
+			}
+		}
+		// reported as soon as decided, before the end of the stream
+		List<Match> found = new ArrayList<>();
+		StreamMatcher matcher = new NFA("id=\\d+").getGraph().streaming((start, end) -> found.add(new Match((int) start, (int) end)));
+		matcher.feed("x id=12");
+		assertEquals(List.of(), found);
+		matcher.feed("3 id=\u00e94");
+		assertEquals(List.of(new Match(2, 8)), found);
+		matcher.read(new StringReader(" id=5"));
+		assertEquals(List.of(new Match(2, 8), new Match(15, 19)), found);
+		assertEquals(0, matcher.position());
+	}
+
+	@Test
+	public void streamingLimit() {
+		List<Match> found = new ArrayList<>();
+		NFAGraph graph = new NFA("a.*b|a").getGraph();
+		StreamMatcher matcher = graph.streaming((start, end) -> found.add(new Match((int) start, (int) end)), 8);
+		matcher.feed("xa");
+		for (int i = 0; i < 1000; i++) {
+			matcher.feed("x");
+		}
+		// the pending match was cut at the limit, not kept open to the end of the message
+		assertEquals(List.of(new Match(1, 2)), found);
+		matcher.feed("b ab");
+		matcher.finish();
+		assertEquals(List.of(new Match(1, 2), new Match(1004, 1006)), found);
+		// within the limit the longest match still wins
+		found.clear();
+		matcher.feed("axxxb");
+		matcher.finish();
+		assertEquals(List.of(new Match(0, 5)), found);
+		assertThrows(IllegalArgumentException.class, () -> graph.streaming((start, end) -> {}, 0));
+	}
+
+	@Test
+	public void grep() {
+		Random random = new Random(67);
+		for (String regex : PATTERNS) {
+			Grep contains = new NFA(regex).getGraph().grep();
+			Grep whole = new NFA(regex).getGraph().grep(Grep.Mode.WHOLE);
+			Pattern pattern = Pattern.compile(regex);
+			for (int i = 0; i < 300; i++) {
+				String s = random(random, 8) + "\n" + random(random, 8) + "\n\n" + random(random, 8);
+				List<Line> expectContains = new ArrayList<>();
+				List<Line> expectWhole = new ArrayList<>();
+				int start = 0;
+				int number = 1;
+				for (String line : s.split("\n", -1)) {
+					if (start < s.length()) {
+						Line l = new Line(number, start, start + line.length());
+						if (reference(pattern, line, 0) != null) {
+							expectContains.add(l);
+						}
+						if (pattern.matcher(line).matches()) {
+							expectWhole.add(l);
+						}
+					}
+					start += line.length() + 1;
+					number++;
+				}
+				assertEquals(expectContains, contains.lines(s), regex + " in '" + s + "'");
+				assertEquals(expectContains, contains.lines(new StringBuilder(s)), regex + " in '" + s + "'");
+				assertEquals(expectWhole, whole.lines(s), regex + " in '" + s + "'");
+				byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+				assertEquals(expectWhole, whole.lines(bytes, 0, bytes.length), regex + " in '" + s + "'");
+			}
+		}
+		Grep grep = new NFA("ERROR|^WARN").getGraph().grep();
+		String log = "INFO ok\nWARN disk\nINFO \u00e9 ERROR x\nINFO WARN\n";
+		assertEquals(List.of(new Line(2, 8, 17), new Line(3, 18, 32)), grep.lines(log));
+	}
+
+	@Test
+	public void findAllIsLazy() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100000; i++) {
+			sb.append("id=").append(i).append(' ');
+		}
+		Matches matches = new NFA("id=\\d+").getGraph().finder().findAll(sb);
+		assertEquals(new Match(0, 4), matches.next());
+		assertEquals(new Match(5, 9), matches.next());
+		assertEquals(100000, new NFA("id=\\d+").getGraph().finder().stream(sb).count());
+	}
+
+	@Test
+	public void prefix() {
+		assertEquals("ERROR ", Literals.prefix(new Program(new NFA("ERROR [a-z]+").getGraph())));
+		assertEquals("user=", Literals.prefix(new Program(new NFA("user=\\d+").getGraph())));
+		assertEquals("a", Literals.prefix(new Program(new NFA("(ab|ac)d").getGraph())));
+		assertEquals("", Literals.prefix(new Program(new NFA("x?y").getGraph())));
+		assertEquals("", Literals.prefix(new Program(new NFA("^abc").getGraph())));
+		Finder finder = new NFA("user=\\d+").getGraph().finder();
+		assertEquals("user=", ((Prefilter.Prefix) finder.prefilter).literal);
+		assertEquals(new Match(10, 18), finder.find("user=x    user=123 user=4", 0));
+		assertEquals(new Match(10, 18), finder.find(new StringBuilder("user=x    user=123 user=4"), 0));
+	}
+
+	@Test
+	public void ahoCorasickStopsAtFirstHit() {
+		Prefilter.AhoCorasick prefilter = new Prefilter.AhoCorasick(List.of("abcdef", "x"));
+		StringBuilder sb = new StringBuilder("x");
+		for (int i = 0; i < 1000000; i++) {
+			sb.append('z');
+		}
+		int[] reads = {0};
+		CharSequence counting = new CharSequence() {
+			public int length() { return sb.length(); }
+			public char charAt(int index) { reads[0]++; return sb.charAt(index); }
+			public CharSequence subSequence(int start, int end) { return sb.subSequence(start, end); }
+		};
+		assertEquals(0, prefilter.next(counting, 0));
+		assertTrue(reads[0] <= 2, "read " + reads[0] + " chars");
+		assertEquals(7, prefilter.next(new StringBuilder("zzabcdzabcdef"), 0));
+		assertEquals(2, prefilter.next(new StringBuilder("zzabcdefx"), 0));
+	}
+
+	@Test
+	public void factors() {
+		assertEquals("[\"@example.com\" at [1, inf]]",
+				Literals.factors(new Program(new NFA("[a-z]+@example\\.com").getGraph())).toString());
+		assertEquals("[\"x\" at [0, 0], \"yz\" at [2, 4]]",
+				Literals.factors(new Program(new NFA("x[0-5]{1,3}yz").getGraph())).toString());
+		assertEquals("[\"kd\" at [0, 2]]",
+				Literals.factors(new Program(new NFA("(a|bc)?kd").getGraph())).toString());
+		assertEquals("[]", Literals.factors(new Program(new NFA("ab|cd").getGraph())).toString());
+
+		Finder finder = new NFA("[a-z]+@example\\.com").getGraph().finder();
+		assertEquals("factor \"@example.com\"", finder.prefilter.toString());
+		assertNull(finder.anchored);
+		assertEquals(new Match(9, 24), finder.find("x@y.com, bob@example.com", 0));
+		assertNull(finder.find("x@y.com, bob@example.org", 0));
+
+		finder = new NFA("\\d{2}:\\d{2} ERROR").getGraph().finder();
+		assertEquals("factor \" ERROR\"", finder.prefilter.toString());
+		assertEquals(new Match(13, 24), finder.find("12:00 INFO x 12:01 ERROR y", 0));
+		assertEquals(finder.stats(), "forward " + finder.forward.states() + " states, reverse "
+				+ finder.reverse.states() + " states, factor \" ERROR\" at [5, 5]");
+	}
+
+	@Test
+	public void factorsThroughLoops() {
+		// every path into the factor may start with a loop, the offset must not run negative
+		assertEquals("[\"END\" at [0, inf]]",
+				Literals.factors(new Program(new NFA("(\\w+,)*END").getGraph())).toString());
+		assertNull(new NFA("(\\w+,)*END").getGraph().finder().find("xx some text here", 0));
+		Random random = new Random(101);
+		for (String regex : new String[]{"(\\w+,)*END", "^([^a]a{2})*[ab]+bc{2}", "([^a]+a{1,2}|c+.)*.(ac{2}).?"}) {
+			Finder finder = new NFA(regex).getGraph().finder();
+			Pattern pattern = Pattern.compile(regex);
+			for (Literals.Factor factor : Literals.factors(new Program(new NFA(regex).getGraph()))) {
+				assertTrue(factor.min >= 0, regex + ": " + factor);
+			}
+			for (int i = 0; i < 2000; i++) {
+				StringBuilder sb = new StringBuilder();
+				for (int j = random.nextInt(14); j > 0; j--) {
+					sb.append("abcx,END".charAt(random.nextInt(8)));
+				}
+				String s = sb.toString();
+				int from = random.nextInt(s.length() + 1);
+				assertEquals(reference(pattern, s, from), finder.find(s, from), regex + " on '" + s + "' from " + from);
+			}
+		}
+	}
+
+	@Test
+	public void prefixes() {
+		assertEquals(List.of("refused ", "reset ", "timeout ", "unreachable "),
+				Literals.prefixes(new Program(new NFA("(timeout|refused|reset|unreachable) .*").getGraph())));
+		assertEquals(List.of("abd", "acd"), Literals.prefixes(new Program(new NFA("(ab|ac)d").getGraph())));
+		assertEquals(List.of(), Literals.prefixes(new Program(new NFA("(ab|[cd])e").getGraph())));
+		assertEquals(List.of(), Literals.prefixes(new Program(new NFA("x*").getGraph())));
+
+		Finder finder = new NFA("(abcd|bc|c)d?").getGraph().finder();
+		assertEquals("prefixes [abcd, bc, c]", finder.prefilter.toString());
+		// bc is found first but abcd starts before it
+		assertEquals(new Match(0, 5), finder.find("abcdd", 0));
+		assertEquals(new Match(2, 4), finder.find("xxbcxx", 0));
+		assertEquals(new Match(1, 2), finder.find("xcabcx", 0));
+		assertNull(finder.find("abdab", 0));
+	}
+
+}
@@ -0,0 +1,137 @@
+package com.github.lcybo.regex;
+
+import jdk.incubator.vector.ByteVector;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// VectorScan against ScalarScan, over every length and tail around the lane count
+public class VectorScanTest {
+
+	static final int LANES = ByteVector.SPECIES_PREFERRED.length();
+
+	// lengths 0 to a few vectors, so every tail length shows up at each vector edge
+	static final int MAX = 3 * Math.max(LANES, 16) + 2;
+
+	static final int[] FROMS = {0, 1, LANES - 1, LANES, LANES + 1};
+
+	@Test
+	public void skip() {
+		final Random random = new Random(17);
+		final ByteClass[] sets = {set("abcdefghijklmnopqrstuvwxyz0123456789_"), set(" \t"), random(random)};
+		for (ByteClass set : sets) {
+			final byte[] members = members(set, true);
+			final byte[] others = members(set, false);
+			for (int n = 0; n <= MAX; n++) {
+				// slack past to, which must not be read as part of the run
+				final byte[] bytes = new byte[n + LANES];
+				for (int i = 0; i < bytes.length; i++) {
+					bytes[i] = members[random.nextInt(members.length)];
+				}
+				for (int from : FROMS) {
+					if (from > n) {
+						continue;
+					}
+					assertSkip(bytes, from, n, set);
+					for (int stop = from; stop < n; stop++) {
+						byte saved = bytes[stop];
+						bytes[stop] = others[random.nextInt(others.length)];
+						assertSkip(bytes, from, n, set);
+						bytes[stop] = saved;
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void indexOf() {
+		final Random random = new Random(17);
+		final String[] literals = {"e", "ab", "abc", "END", "needle", "a\u00e9b"};
+		for (String s : literals) {
+			final byte[] literal = s.getBytes(StandardCharsets.UTF_8);
+			for (int n = 0; n <= MAX; n++) {
+				final byte[] bytes = new byte[n + LANES];
+				for (int from : FROMS) {
+					if (from > n) {
+						continue;
+					}
+					fill(bytes, literal, random);
+					assertIndexOf(bytes, from, n, literal);
+					for (int at = from; at <= n && at + literal.length <= bytes.length; at++) {
+						fill(bytes, literal, random);
+						System.arraycopy(literal, 0, bytes, at, literal.length);
+						// a near miss, first and last byte right, ahead of it
+						if (literal.length > 2 && at >= literal.length) {
+							System.arraycopy(literal, 0, bytes, at - literal.length, literal.length);
+							bytes[at - 2] ^= 1;
+						}
+						assertIndexOf(bytes, from, n, literal);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void vectorPath() {
+		// below 16 lanes VectorScan is ScalarScan and the tests above compare it with itself
+		assertTrue(LANES >= 16, "expected 16 lanes or more, the platform has " + LANES);
+	}
+
+	private static void assertSkip(byte[] bytes, int from, int to, ByteClass set) {
+		assertEquals(ScalarScan.skip(bytes, from, to, set), VectorScan.skip(bytes, from, to, set),
+				() -> "skip from " + from + " to " + to + " in " + Arrays.toString(bytes));
+	}
+
+	private static void assertIndexOf(byte[] bytes, int from, int to, byte[] literal) {
+		assertEquals(ScalarScan.indexOf(bytes, from, to, literal), VectorScan.indexOf(bytes, from, to, literal),
+				() -> "indexOf " + Arrays.toString(literal) + " from " + from + " to " + to + " in " + Arrays.toString(bytes));
+	}
+
+	// bytes sharing the literal's last byte but never its first, so only planted copies match
+	private static void fill(byte[] bytes, byte[] literal, Random random) {
+		for (int i = 0; i < bytes.length; i++) {
+			byte b;
+			do {
+				b = (byte) (random.nextBoolean() ? literal[literal.length - 1] : random.nextInt(256));
+			} while (b == literal[0]);
+			bytes[i] = b;
+		}
+	}
+
+	private static ByteClass set(String chars) {
+		long lo = 0, hi = 0;
+		for (int i = 0; i < chars.length(); i++) {
+			char c = chars.charAt(i);
+			if (c < 64) {
+				lo |= 1L << c;
+			} else {
+				hi |= 1L << (c - 64);
+			}
+		}
+		return new ByteClass(lo, hi);
+	}
+
+	private static ByteClass random(Random random) {
+		return new ByteClass(random.nextLong(), random.nextLong());
+	}
+
+	// the members of the set, or all other bytes, 0x80 up included
+	private static byte[] members(ByteClass set, boolean in) {
+		final byte[] bytes = new byte[256];
+		int n = 0;
+		for (int b = 0; b < 256; b++) {
+			if (set.contains((byte) b) == in) {
+				bytes[n++] = (byte) b;
+			}
+		}
+		return Arrays.copyOf(bytes, n);
+	}
+
+}